@@ -21,6 +21,14 @@ METHODSIG_COLUMN = "method_signature"
 # Example: org.apache.ibatis.executor.BaseExecutor#query
 METHOD_COLUMN = "method"
 
+# Run every target of a module inside one Maven JVM (chatunitest:targets)
+# instead of starting one `mvn ...:method` process per row.
+USE_TARGETS_GOAL = False
+
+# LLM response cache under tmpOutput: read | write | readwrite | off.
+# Runs use temperature 0, so a repeated prompt can reuse the stored answer.
+CACHE_MODE = "off"
+
 # ============================================================
 
 
@@ -164,6 +172,31 @@ def build_module_to_methods(loc_meta: dict, targets_csv: Path, global_log: Path,
     return module_to_methods
 
 
+def run_targets_goal(module_to_methods: Dict[str, list], api_keys_arg: str, model_arg: str,
+                     tool_dir: Path, output_dir: Path, global_log: Path):
+    """Run chatunitest:targets once per module; the goal reads targets.csv itself."""
+    for module in module_to_methods:
+        module_dir = tool_dir if module in ["", "."] else tool_dir / module
+        logfile = output_dir / "gentest" / sha1(f"{module}:targets") / "chatunitest_targets.log"
+        cmd = (
+            f"source /app/init_env.sh && "
+            f"mvn -B io.github.zju-aces-ise:chatunitest-maven-plugin:2.1.1:targets "
+            f"{api_keys_arg} {model_arg} "
+            f"-Durl=https://api.openai.com/v1/chat/completions "
+            f"-DonlyTargetLines=true -DphaseType=HITS "
+            f"-DtargetsFile={TARGETS_CSV} -DlocMethodMeta={LOC_METHOD_META} "
+            f"-DtargetsModule='{module}' "
+            f"-DctextColumn={CTEXT_COLUMN} -DoffsetColumn={OFFSET_COLUMN} "
+            f"-DmethodsigColumn={METHODSIG_COLUMN} -DmethodColumn={METHOD_COLUMN} -Dtemperature=0 "
+            f"-DcacheMode={CACHE_MODE}"
+        )
+        log(f"\n[RUN] Executing in: {module_dir}", global_log)
+        log(f"[RUN] Command: {cmd}\n", global_log)
+        rc = run_silent(cmd, logfile, cwd=module_dir)
+        if rc != 0:
+            log(f"[WARN] Command failed with rc={rc} for module={module}", global_log)
+
+
 def main():
     TOOL_DIR = Path("/app/input/tool").resolve()
     OUTPUT_DIR = Path("/app/output").resolve()
@@ -195,6 +228,11 @@ def main():
 
     module_to_methods = build_module_to_methods(loc_meta, TARGETS_CSV, GLOBAL_LOG, OUT_JSON)
 
+    if USE_TARGETS_GOAL:
+        run_targets_goal(module_to_methods, DAPI_KEYS, DMODEL, TOOL_DIR, OUTPUT_DIR, GLOBAL_LOG)
+        log("[INFO] Done.", GLOBAL_LOG)
+        return
+
     # Run commands per module/method
     for module, items in module_to_methods.items():
         for item in items:
@@ -229,7 +267,8 @@ def main():
                 f"-Durl=https://api.openai.com/v1/chat/completions "
                 f"-DonlyTargetLines=true -DphaseType=HITS "
                 f"-DselectClass={cls} -DselectMethod={mname} "
-                f"-Dlines={line}{ctext_arg}{offset_arg}{methodsig_arg} -Dtemperature=0"
+                f"-Dlines={line}{ctext_arg}{offset_arg}{methodsig_arg} -Dtemperature=0 "
+                f"-DcacheMode={CACHE_MODE}"
             )
 
             module_dir = TOOL_DIR if module in ["", "."] else TOOL_DIR / module
@@ -0,0 +1,49 @@
+package zju.cst.aces;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+import zju.cst.aces.batch.JobScheduler;
+import zju.cst.aces.batch.MethodTarget;
+import zju.cst.aces.batch.ProjectClasses;
+import zju.cst.aces.batch.TargetRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base of the two phases of a batch API run: export-prompts writes the generation prompts to a JSONL file,
+ * import-responses loads the batch output into the response cache and generates the tests from there
+ */
+public abstract class BatchMojo extends TargetsMojo {
+    /**
+     * classes: every class of the module; targets: the rows of targetsFile for this module
+     */
+    @Parameter(property = "batchJobs", defaultValue = "classes")
+    public String batchJobs;
+
+    @Parameter(property = "batchPrompts", defaultValue = "${project.build.directory}/chatunitest-batch/prompts.jsonl")
+    public File batchPrompts;
+
+    /**
+     * Run the classes or targets of the module, as many at once as a class run would
+     * @param runner the runner of the module
+     * @return the number of jobs
+     */
+    protected int runBatchJobs(TargetRunner runner) throws MojoExecutionException {
+        List<JobScheduler.Job> jobs = new ArrayList<>();
+        if ("targets".equalsIgnoreCase(batchJobs)) {
+            for (MethodTarget target : moduleTargets()) {
+                jobs.add(new JobScheduler.Job(target.toString(), () -> runner.runMethod(target)));
+            }
+        } else {
+            for (String className : ProjectClasses.list(project)) {
+                jobs.add(new JobScheduler.Job(className, () -> runner.runClass(className)));
+            }
+        }
+        int parallelism = enableMultithreading ? JobScheduler.classParallelism(maxThreads) : 1;
+        int failed = newScheduler(parallelism).runAll(jobs);
+        log.info(String.format("\n==========================\n[%s] Finished %d jobs (%d failed)", phaseType, jobs.size(), failed));
+        return jobs.size();
+    }
+}
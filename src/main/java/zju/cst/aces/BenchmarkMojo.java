@@ -0,0 +1,162 @@
+package zju.cst.aces;
+
+import okhttp3.OkHttpClient;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import zju.cst.aces.batch.JobScheduler;
+import zju.cst.aces.batch.ProjectClasses;
+import zju.cst.aces.batch.TargetRunner;
+import zju.cst.aces.bench.MockLlmServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates tests for the classes of the project against a local mock LLM endpoint and reports throughput,
+ * latency percentiles and peak heap, so the plugin's own overhead can be tracked without network or model time.
+ */
+@Mojo(name = "benchmark")
+public class BenchmarkMojo extends ProjectTestMojo {
+    @Parameter(property = "benchmarkLatency", defaultValue = "500")
+    public long benchmarkLatency;
+
+    @Parameter(property = "benchmark429Rate", defaultValue = "0")
+    public double benchmark429Rate;
+
+    /**
+     * Assistant content returned for every call, ${test_class} is replaced with the expected test class name
+     */
+    @Parameter(property = "benchmarkResponse")
+    public File benchmarkResponse;
+
+    /**
+     * How many classes to run, 0 for all
+     */
+    @Parameter(property = "benchmarkClasses", defaultValue = "0")
+    public int benchmarkClasses;
+
+    public void execute() throws MojoExecutionException {
+        log = getLog();
+        if (project.getPackaging().equals("pom")) {
+            log.info("\n==========================\n[ChatUniTest] Skip pom-packaging ...");
+            return;
+        }
+        String canned = null;
+        if (benchmarkResponse != null) {
+            try {
+                canned = new String(Files.readAllBytes(benchmarkResponse.toPath()), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to read " + benchmarkResponse, e);
+            }
+        }
+        try (MockLlmServer server = new MockLlmServer(benchmarkLatency, benchmark429Rate, canned)) {
+            url = server.getUrl();
+            apiKeys = new String[]{"mock-key"};
+            init();
+
+            List<String> classes = orderClasses(project, ProjectClasses.list(project));
+            if (benchmarkClasses > 0 && classes.size() > benchmarkClasses) {
+                classes = classes.subList(0, benchmarkClasses);
+            }
+            TargetRunner runner = new TargetRunner(this, project, config);
+            List<Long> jobTimes = Collections.synchronizedList(new ArrayList<>());
+            List<JobScheduler.Job> jobs = new ArrayList<>();
+            for (String className : classes) {
+                jobs.add(new JobScheduler.Job(className, () -> {
+                    long start = System.currentTimeMillis();
+                    try {
+                        runner.runClass(className);
+                    } finally {
+                        jobTimes.add(System.currentTimeMillis() - start);
+                    }
+                }));
+            }
+
+            resetHeapPeaks();
+            long start = System.currentTimeMillis();
+            int parallelism = enableMultithreading ? JobScheduler.classParallelism(maxThreads) : 1;
+            int failed = newScheduler(parallelism).runAll(jobs);
+            long elapsed = System.currentTimeMillis() - start;
+
+            StringBuilder report = new StringBuilder("\n==========================\n[Benchmark] ");
+            report.append(String.format("%d classes (%d failed) in %.1fs, %.1f classes/min, mock latency %dms%n",
+                    jobs.size(), failed, elapsed / 1000.0, elapsed == 0 ? 0.0 : jobs.size() * 60_000.0 / elapsed,
+                    benchmarkLatency));
+            report.append(String.format("[Benchmark] class   p50 %6dms  p95 %6dms%n",
+                    percentile(jobTimes, 50), percentile(jobTimes, 95)));
+            for (Map.Entry<MockLlmServer.Phase, List<Long>> phase : server.getServiceTimes().entrySet()) {
+                if (!phase.getValue().isEmpty()) {
+                    report.append(String.format("[Benchmark] %-7s p50 %6dms  p95 %6dms  (%d calls)%n",
+                            phase.getKey().name().toLowerCase(), percentile(phase.getValue(), 50),
+                            percentile(phase.getValue(), 95), phase.getValue().size()));
+                }
+            }
+            report.append(String.format("[Benchmark] LLM calls %d (%d answered 429), peak heap %.1f MB",
+                    server.getRequests(), server.getRejected(), peakHeapBytes() / 1024.0 / 1024.0));
+            log.info(report.toString());
+            if (server.getUnmarked() > 0 || server.getMismatched() > 0) {
+                log.warn(String.format("[Benchmark] %d LLM calls without a prompt kind, %d with a kind that does not "
+                        + "match their prompt", server.getUnmarked(), server.getMismatched()));
+            }
+            logRunStats();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to start the mock LLM server", e);
+        }
+    }
+
+    @Override
+    protected boolean needsPromptKinds() {
+        // the mock routes and checks every call by its prompt kind
+        return true;
+    }
+
+    @Override
+    protected void customizeClient(OkHttpClient.Builder builder) {
+        // innermost, so the header goes to the mock and nowhere else
+        builder.addInterceptor(MockLlmServer.kindHeader());
+    }
+
+    static long percentile(List<Long> values, int percentile) {
+        List<Long> sorted;
+        synchronized (values) {
+            sorted = new ArrayList<>(values);
+        }
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+
+    private static void resetHeapPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sum of the per-pool peaks, an upper bound of the real peak
+     */
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
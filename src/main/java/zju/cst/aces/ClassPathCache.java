@@ -0,0 +1,120 @@
+package zju.cst.aces;
+
+import com.google.gson.Gson;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk cache of the dependency class paths resolved by {@link ProjectTestMojo#listClassPaths}.
+ * An entry is valid while the effective pom hashes the same and every cached artifact keeps its timestamp.
+ */
+public class ClassPathCache {
+    private static final Gson GSON = new Gson();
+
+    private final Path cacheFile;
+
+    public ClassPathCache(Path cacheDir, MavenProject project) {
+        this.cacheFile = cacheDir.resolve(project.getGroupId() + "_" + project.getArtifactId() + ".json");
+    }
+
+    /**
+     * @param pomHash hash of the current effective pom
+     * @return the cached dependency class paths, or null when missing or stale
+     */
+    public List<String> load(String pomHash) {
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+        Entries entries;
+        try (Reader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            entries = GSON.fromJson(reader, Entries.class);
+        } catch (Exception e) {
+            return null;
+        }
+        if (entries == null || entries.dependencies == null || !pomHash.equals(entries.pomHash)) {
+            return null;
+        }
+        List<String> classPaths = new ArrayList<>();
+        for (Entry entry : entries.dependencies) {
+            File file = new File(entry.path);
+            if (!file.exists() || file.lastModified() != entry.lastModified) {
+                return null;
+            }
+            classPaths.add(entry.path);
+        }
+        return classPaths;
+    }
+
+    public void store(String pomHash, List<String> dependencies) {
+        Entries entries = new Entries();
+        entries.pomHash = pomHash;
+        entries.dependencies = new ArrayList<>();
+        for (String path : dependencies) {
+            Entry entry = new Entry();
+            entry.path = path;
+            entry.lastModified = new File(path).lastModified();
+            entries.dependencies.add(entry);
+        }
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tmp = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                GSON.toJson(entries, writer);
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            ProjectTestMojo.log.warn("Failed to write class path cache " + cacheFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hash of the effective (interpolated) pom, falling back to the pom file when the model cannot be written
+     */
+    public static String pomHash(MavenProject project) {
+        try {
+            StringWriter writer = new StringWriter();
+            new MavenXpp3Writer().write(writer, project.getModel());
+            return sha256(writer.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            try {
+                return sha256(Files.readAllBytes(project.getFile().toPath()));
+            } catch (Exception ex) {
+                return "";
+            }
+        }
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return String.format("%064x", new BigInteger(1, digest.digest(bytes)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entries {
+        String pomHash;
+        List<Entry> dependencies;
+    }
+
+    private static class Entry {
+        String path;
+        long lastModified;
+    }
+}
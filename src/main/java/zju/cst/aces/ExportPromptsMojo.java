@@ -0,0 +1,52 @@
+package zju.cst.aces;
+
+import okhttp3.OkHttpClient;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import zju.cst.aces.batch.TargetRunner;
+import zju.cst.aces.http.BatchExporter;
+
+import java.io.IOException;
+
+/**
+ * ChatUniTest maven plugin for exporting the generation prompts of a module as batch API requests
+ */
+
+@Mojo(name = "export-prompts")
+public class ExportPromptsMojo extends BatchMojo {
+    private BatchExporter exporter;
+
+    /**
+     * Render the generation prompt of every class (or target) into batchPrompts without calling the LLM
+     * @throws MojoExecutionException
+     */
+    public void execute() throws MojoExecutionException {
+        log = getLog();
+        if (project.getPackaging().equals("pom")) {
+            log.info("\n==========================\n[ChatUniTest] Skip pom-packaging ...");
+            return;
+        }
+        try {
+            exporter = new BatchExporter(batchPrompts.toPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to create " + batchPrompts, e);
+        }
+        init();
+        log.info(String.format("\n==========================\n[%s] Exporting prompts of %s to %s ...",
+                phaseType, project.getBasedir().getName(), batchPrompts));
+        runBatchJobs(new TargetRunner(this, project, config));
+        log.info(String.format("[%s] Exported %d prompts to %s", phaseType, exporter.getExported(), batchPrompts));
+    }
+
+    @Override
+    protected boolean needsPromptKinds() {
+        // repair prompts are never exported
+        return true;
+    }
+
+    @Override
+    protected void customizeClient(OkHttpClient.Builder builder) {
+        // outermost, no exported request reaches the cache or the network
+        builder.interceptors().add(0, exporter);
+    }
+}
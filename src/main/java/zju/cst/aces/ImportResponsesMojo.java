@@ -0,0 +1,78 @@
+package zju.cst.aces;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import zju.cst.aces.batch.TargetRunner;
+import zju.cst.aces.http.ResponseCache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * ChatUniTest maven plugin for the second phase of a batch API run: the batch output is loaded into the
+ * response cache and the module is generated again, so the exported prompts are answered from the cache and
+ * only validation and repair calls go to the LLM
+ */
+
+@Mojo(name = "import-responses")
+public class ImportResponsesMojo extends BatchMojo {
+    /**
+     * The batch output JSONL: one {"custom_id", "response": {"status_code", "body"}} object per line
+     */
+    @Parameter(property = "batchResponses", required = true)
+    public File batchResponses;
+
+    public void execute() throws MojoExecutionException {
+        log = getLog();
+        if (project.getPackaging().equals("pom")) {
+            log.info("\n==========================\n[ChatUniTest] Skip pom-packaging ...");
+            return;
+        }
+        // the imported answers are only seen through the cache
+        if (cacheMode == null || cacheMode.equalsIgnoreCase("off")) {
+            cacheMode = "read";
+        } else if (cacheMode.equalsIgnoreCase("write")) {
+            cacheMode = "readwrite";
+        }
+        init();
+        importResponses(ResponseCache.current());
+        TargetRunner runner = new TargetRunner(this, project, config);
+        runner.setJournal(openJournal(project));
+        runBatchJobs(runner);
+        logRunStats();
+    }
+
+    private void importResponses(ResponseCache cache) throws MojoExecutionException {
+        int imported = 0;
+        int failed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(batchResponses.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonObject entry = JsonParser.parseString(line).getAsJsonObject();
+                JsonElement customId = entry.get("custom_id");
+                JsonObject response = entry.has("response") && entry.get("response").isJsonObject()
+                        ? entry.getAsJsonObject("response") : null;
+                int status = response != null && response.has("status_code") ? response.get("status_code").getAsInt() : 0;
+                if (customId == null || response == null || status != 200 || !response.has("body")) {
+                    failed++;
+                    continue;
+                }
+                cache.put(customId.getAsString(), response.get("body").toString());
+                imported++;
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new MojoExecutionException("Failed to read batch responses " + batchResponses, e);
+        }
+        log.info(String.format("[%s] Imported %d responses from %s (%d failed)", phaseType, imported, batchResponses, failed));
+    }
+}
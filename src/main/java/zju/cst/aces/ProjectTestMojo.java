@@ -18,6 +18,7 @@ package zju.cst.aces;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import okhttp3.OkHttpClient;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -35,6 +36,27 @@ import zju.cst.aces.api.Task;
 import zju.cst.aces.api.config.Config;
 import zju.cst.aces.api.impl.ProjectImpl;
 import zju.cst.aces.api.impl.RunnerImpl;
+import zju.cst.aces.batch.AdaptiveTests;
+import zju.cst.aces.batch.CostEstimator;
+import zju.cst.aces.batch.JobScheduler;
+import zju.cst.aces.batch.ProjectClasses;
+import zju.cst.aces.batch.RunJournal;
+import zju.cst.aces.batch.TargetRunner;
+import zju.cst.aces.batch.TokenCounter;
+import zju.cst.aces.hits.ContextSelector;
+import zju.cst.aces.hits.HitsPrompts;
+import zju.cst.aces.hits.SliceCache;
+import zju.cst.aces.hits.TargetValues;
+import zju.cst.aces.http.EndpointRouter;
+import zju.cst.aces.http.InFlightLimiter;
+import zju.cst.aces.http.LlmClients;
+import zju.cst.aces.http.LlmStats;
+import zju.cst.aces.http.PromptMarkers;
+import zju.cst.aces.http.RateLimiter;
+import zju.cst.aces.http.RequestHedger;
+import zju.cst.aces.http.ResponseCache;
+import zju.cst.aces.http.SpeculativeRepair;
+import zju.cst.aces.http.StreamingInterceptor;
 import zju.cst.aces.logger.MavenLogger;
 import zju.cst.aces.parser.ProjectParser;
 
@@ -51,6 +73,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.shared.invoker.DefaultInvocationRequest;
 import org.apache.maven.shared.invoker.DefaultInvoker;
@@ -80,6 +103,11 @@ public class ProjectTestMojo
     public File examplePath;
     @Parameter(property = "url", defaultValue = "https://api.gptsapi.net/v1/chat/completions")
     public String url;
+    /**
+     * Several OpenAI-compatible endpoints as url|weight|maxConcurrent, used instead of url when set
+     */
+    @Parameter(property = "endpoints")
+    public String[] endpoints;
     @Parameter(property = "model", defaultValue = "gpt-3.5-turbo")
     public String model;
     @Parameter(property = "apiKeys", required = true)
@@ -124,6 +152,34 @@ public class ProjectTestMojo
     public int presencePenalty;
     @Parameter(property = "proxy",defaultValue = "null:-1")
     public String proxy;
+    @Parameter(property = "maxConnections", defaultValue = "32")
+    public int maxConnections;
+    @Parameter(property = "keepAliveSeconds", defaultValue = "300")
+    public int keepAliveSeconds;
+    @Parameter(property = "http2", defaultValue = "true")
+    public boolean http2;
+    @Parameter(property = "connectTimeout", defaultValue = "10")
+    public int connectTimeout;
+    @Parameter(property = "readTimeout", defaultValue = "120")
+    public int readTimeout;
+    @Parameter(property = "writeTimeout", defaultValue = "30")
+    public int writeTimeout;
+    @Parameter(property = "callTimeout", defaultValue = "0")
+    public int callTimeout;
+    @Parameter(property = "stream", defaultValue = "false")
+    public boolean stream;
+    @Parameter(property = "streamUsage", defaultValue = "false")
+    public boolean streamUsage;
+    @Parameter(property = "cacheMode", defaultValue = "off")
+    public String cacheMode;
+    @Parameter(property = "cacheMaxMB", defaultValue = "512")
+    public int cacheMaxMB;
+    @Parameter(property = "repairCandidates", defaultValue = "1")
+    public int repairCandidates;
+    @Parameter(property = "hedgePercentile", defaultValue = "0")
+    public double hedgePercentile;
+    @Parameter(property = "hedgeMaxExtra", defaultValue = "0.05")
+    public double hedgeMaxExtra;
     @Parameter(property = "phaseType",defaultValue = "CHATUNITEST")
     public String phaseType;
     @Parameter(property = "smartUnitTest_jar_path",defaultValue = "")
@@ -132,6 +188,28 @@ public class ProjectTestMojo
     public String mavenHome;
     @Parameter(property = "sampleSize", defaultValue = "10")
     public int sampleSize;
+    @Parameter(property = "classPathCache", defaultValue = "true")
+    public boolean classPathCache;
+    @Parameter(property = "resume", defaultValue = "false")
+    public boolean resume;
+    @Parameter(property = "schedule", defaultValue = "discovery")
+    public String schedule;
+    @Parameter(property = "executor", defaultValue = "platform")
+    public String executor;
+    @Parameter(property = "maxInFlight", defaultValue = "0")
+    public int maxInFlight;
+    @Parameter(property = "requestsPerMinute", defaultValue = "0")
+    public int requestsPerMinute;
+    @Parameter(property = "tokensPerMinute", defaultValue = "0")
+    public int tokensPerMinute;
+    @Parameter(property = "rateLimitRetries", defaultValue = "3")
+    public int rateLimitRetries;
+    @Parameter(property = "adaptiveTests", defaultValue = "false")
+    public boolean adaptiveTests;
+    @Parameter(property = "targetCoverage", defaultValue = "1.0")
+    public double targetCoverage;
+    @Parameter(property = "coveragePatience", defaultValue = "1")
+    public int coveragePatience;
     @Parameter(property = "ctext")
     public String ctext;
 
@@ -141,11 +219,33 @@ public class ProjectTestMojo
     @Parameter(property = "methodsig")
     public String methodsig;
 
+    // --- minimal additions for HITS prompts ---
+    @Parameter(property = "lines", defaultValue = "-1")
+    public int lines;
+
+    @Parameter(property = "onlyTargetLines", defaultValue = "false")
+    public boolean onlyTargetLines;
+
+    @Parameter(property = "fullFM", defaultValue = "false")
+    public boolean fullFM;
+
+    @Parameter(property = "promptLayout", defaultValue = "classic")
+    public String promptLayout;
+
+    @Parameter(property = "sliceCache", defaultValue = "true")
+    public boolean sliceCache;
+
+    @Parameter(property = "batchLines", defaultValue = "false")
+    public boolean batchLines;
+    // ------------------------------------------
+
     public static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
     @Component(hint = "default")
     public DependencyGraphBuilder dependencyGraphBuilder;
     public static Log log;
     public Config config;
+    protected File resolvedPromptDir;
+    private TargetValues.Binding hitsBinding;
 
 
     /**
@@ -175,20 +275,256 @@ public class ProjectTestMojo
             // ----------------------------------------------------------------
 
             // Generate tests
-            new Task(config, new RunnerImpl(config)).startProjectTask();
+            if (resume || costSchedule() || virtualExecutor()) {
+                runClassJobs();
+            } else {
+                new Task(config, new RunnerImpl(config)).startProjectTask();
+                logRunStats();
+            }
         } catch (Exception e) {
             log.error("Error during execution: " + e.getMessage(), e);
             throw new MojoExecutionException("Failed to execute Maven commands or generate tests", e);
         }
     }
 
-    public void init() {
+    public void init() throws MojoExecutionException {
         log = getLog();
-        MavenLogger mLogger = new MavenLogger(log);
-        Project myProject = new ProjectImpl(project, listClassPaths(project, dependencyGraphBuilder));
-        config = new Config.ConfigBuilder(myProject)
+        resolvedPromptDir = resolvePromptDir();
+        Project myProject = new ProjectImpl(project, listClassPaths(project, dependencyGraphBuilder, classPathCacheDir()));
+        config = buildConfig(myProject, resolvedPromptDir);
+        // SmartUnitTest generation is now handled in the execute method when phaseType is TELPA
+        config.print();
+    }
+
+    /**
+     * Run the project class by class so that each finished class is journaled and a resumed run skips it,
+     * in the order chosen by the schedule parameter
+     */
+    protected void runClassJobs() throws Exception {
+        TargetRunner runner = new TargetRunner(this, project, config);
+        runner.setJournal(openJournal(project));
+        List<String> classes = orderClasses(project, ProjectClasses.list(project));
+        AtomicInteger skipped = new AtomicInteger();
+        List<JobScheduler.Job> jobs = new ArrayList<>();
+        for (String className : classes) {
+            jobs.add(new JobScheduler.Job(className, () -> {
+                if (!runner.runClass(className)) {
+                    skipped.incrementAndGet();
+                }
+            }));
+        }
+        // each class task starts its own method pool, so only the class share of maxThreads runs at once
+        int parallelism = enableMultithreading ? JobScheduler.classParallelism(maxThreads) : 1;
+        int failed = newScheduler(parallelism).runAll(jobs);
+        log.info(String.format("\n==========================\n[%s] Finished %d classes (%d skipped, %d failed)",
+                phaseType, classes.size(), skipped.get(), failed));
+        logRunStats();
+    }
+
+    /**
+     * Log the LLM client statistics of the run
+     */
+    public void logRunStats() {
+        ResponseCache cache = ResponseCache.current();
+        if (cache != null) {
+            log.info(String.format("[%s] Response cache: %d hits, %d misses", phaseType, cache.getHits(), cache.getMisses()));
+        }
+        String llmStats = LlmStats.get().summary();
+        if (llmStats != null) {
+            log.info(String.format("[%s] %s", phaseType, llmStats));
+        }
+        if (endpoints != null && endpoints.length > 0) {
+            log.info(String.format("[%s] %s", phaseType, EndpointRouter.shared(endpoints).summary()));
+        }
+        String hedgeStats = RequestHedger.summary();
+        if (hedgeStats != null) {
+            log.info(String.format("[%s] %s", phaseType, hedgeStats));
+        }
+        String sliceStats = SliceCache.summary();
+        if (sliceStats != null) {
+            log.info(String.format("[%s] %s", phaseType, sliceStats));
+        }
+        String tokenStats = TokenCounter.summary();
+        if (tokenStats != null) {
+            log.info(String.format("[%s] %s", phaseType, tokenStats));
+        }
+    }
+
+    /**
+     * @return the generator of method tests that stops on focal method coverage, or null for a fixed testNumber
+     */
+    public AdaptiveTests adaptiveTests() {
+        return adaptiveTests ? new AdaptiveTests(log, testNumber, targetCoverage, coveragePatience) : null;
+    }
+
+    /**
+     * @return whether HITS prompts use the prefix-stable layout
+     */
+    public boolean prefixLayout() {
+        return "prefix".equalsIgnoreCase(promptLayout);
+    }
+
+    protected boolean virtualExecutor() {
+        return "virtual".equalsIgnoreCase(executor);
+    }
+
+    /**
+     * @param parallelism how many jobs run at once, as the pool size or the bound on virtual threads
+     * @return a scheduler on the configured executor
+     */
+    public JobScheduler newScheduler(int parallelism) {
+        return new JobScheduler(parallelism, virtualExecutor(), parallelism, log);
+    }
+
+    /**
+     * @return the JVM-wide bound on LLM requests in flight, 0 for none; virtual threads default to the platform pool size
+     */
+    public int inFlightLimit() {
+        if (maxInFlight > 0) {
+            return maxInFlight;
+        }
+        return virtualExecutor() ? JobScheduler.defaultParallelism(maxThreads) : 0;
+    }
+
+    protected boolean costSchedule() {
+        return "cost".equalsIgnoreCase(schedule);
+    }
+
+    /**
+     * With schedule=cost, order classes by the estimated tokens of their prompt context: the most expensive first
+     * so they do not stretch the tail of the run, or the cheapest first when stopWhenSuccess favours quick wins
+     * @param module the module of the classes
+     * @param classes the classes in discovery order
+     * @return the classes in scheduling order
+     */
+    public List<String> orderClasses(MavenProject module, List<String> classes) {
+        if (!costSchedule()) {
+            return classes;
+        }
+        return new CostEstimator(module, ProjectClasses.list(module), dependencyDepth, TokenCounter.forModel(model))
+                .order(classes, stopWhenSuccess);
+    }
+
+    /**
+     * @param module the module whose tasks are journaled
+     * @return the run journal of the module under tmpOutput
+     */
+    public RunJournal openJournal(MavenProject module) {
+        return new RunJournal(tmpOutput.toPath().resolve("journal")
+                .resolve(module.getGroupId() + "_" + module.getArtifactId() + ".jsonl"), resume, log);
+    }
+
+    /**
+     * Every parameter that changes what a task generates; a journal entry is only reused while this stays the same
+     */
+    public String inputFingerprint() {
+        return String.join("|", model, url, phaseType, String.valueOf(promptPath), String.valueOf(testNumber),
+                String.valueOf(maxRounds), String.valueOf(maxPromptTokens), String.valueOf(maxResponseTokens),
+                String.valueOf(minErrorTokens), String.valueOf(temperature), String.valueOf(topP),
+                String.valueOf(frequencyPenalty), String.valueOf(presencePenalty), String.valueOf(dependencyDepth),
+                String.valueOf(stopWhenSuccess), String.valueOf(noExecution), String.valueOf(enableRuleRepair),
+                String.valueOf(lines), String.valueOf(onlyTargetLines), String.valueOf(fullFM),
+                String.valueOf(ctext), String.valueOf(offset), String.valueOf(methodsig), String.valueOf(sliceCache),
+                String.valueOf(batchLines), String.valueOf(promptLayout), String.valueOf(repairCandidates),
+                String.valueOf(stream), adaptiveTests ? targetCoverage + "/" + coveragePatience : "fixed");
+    }
+
+    /**
+     * @return where resolved dependency class paths are cached, or null when the cache is disabled
+     */
+    public Path classPathCacheDir() {
+        return classPathCache ? tmpOutput.toPath().resolve("classpath-cache") : null;
+    }
+
+    /**
+     * The prompt directory handed to the Config, overridden by goals that bind per-target prompt values
+     * @return the prompt directory, or null for the bundled prompts
+     * @throws MojoExecutionException
+     */
+    protected File resolvePromptDir() throws MojoExecutionException {
+        return promptDir();
+    }
+
+    /**
+     * @return promptPath when no interceptor reads the prompt kinds, otherwise the JVM-wide prompt directory with
+     * the templates of promptPath (or the bundled ones) marked with their kind and the HITS placeholders bound
+     * per target
+     * @throws MojoExecutionException
+     */
+    public File promptDir() throws MojoExecutionException {
+        if (!needsPromptKinds()) {
+            return promptPath;
+        }
+        try {
+            return HitsPrompts.promptDir(promptPath, log, prefixLayout());
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Failed to prepare the prompts", ex);
+        }
+    }
+
+    /**
+     * @return whether an interceptor of the run acts on the kind of a prompt: the HITS slice cache and target
+     * values, streaming and speculative repair; goals that read the kinds themselves override this
+     */
+    protected boolean needsPromptKinds() {
+        return "HITS".equalsIgnoreCase(phaseType) || stream || repairCandidates > 1;
+    }
+
+    /**
+     * Bind the HITS prompt values of the given class from the lines/ctext/offset/methodsig parameters until
+     * {@link #releaseHitsValues()}
+     * @param selectClass the focal class
+     * @param selectMethod the focal method, or null for every method of the class
+     * @return the prompt directory
+     * @throws MojoExecutionException
+     */
+    protected File hitsPromptDir(String selectClass, String selectMethod) throws MojoExecutionException {
+        if ("HITS".equalsIgnoreCase(phaseType)) {
+            releaseHitsValues();
+            try {
+                hitsBinding = TargetValues.bind(selectClass, selectMethod, selectClass + "#" + selectMethod + ":" + lines,
+                        HitsPrompts.targetValues(log, lines, onlyTargetLines, fullFM, project, selectClass, ctext,
+                                offset, methodsig, prefixLayout()));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to bind the HITS prompt values", e);
+            }
+        }
+        return promptDir();
+    }
+
+    /**
+     * Release the values bound by {@link #hitsPromptDir}; the plugin realm outlives the execution, so a later
+     * execution of the same class in this JVM would wait for them forever
+     */
+    protected void releaseHitsValues() {
+        if (hitsBinding != null) {
+            hitsBinding.close();
+            hitsBinding = null;
+        }
+    }
+
+    /**
+     * Build a Config from the plugin parameters
+     * @param myProject the project with its resolved class paths
+     * @param promptDir the prompt directory to use
+     * @return the config
+     */
+    public Config buildConfig(Project myProject, File promptDir) {
+        return buildConfig(myProject, promptDir, testNumber);
+    }
+
+    /**
+     * Build a Config from the plugin parameters with its own test count
+     * @param myProject the project with its resolved class paths
+     * @param promptDir the prompt directory to use
+     * @param testNumber how many tests each method task generates
+     * @return the config
+     */
+    public Config buildConfig(Project myProject, File promptDir, int testNumber) {
+        MavenLogger mLogger = new MavenLogger(getLog());
+        Config config = new Config.ConfigBuilder(myProject)
                 .logger(mLogger)
-                .promptPath(promptPath)
+                .promptPath(promptDir)
                 .examplePath(examplePath.toPath())
                 .apiKeys(apiKeys)
                 .enableMultithreading(enableMultithreading)
@@ -218,9 +554,78 @@ public class ProjectTestMojo
                 .phaseType(phaseType)
                 .sampleSize(sampleSize)
                 .build();
-        // SmartUnitTest generation is now handled in the execute method when phaseType is TELPA
         config.setPluginSign(phaseType);
-        config.print();
+        configureClient(config);
+        ContextSelector.configure(maxPromptTokens, model);
+        return config;
+    }
+
+    /**
+     * Replace the LLM client of the Config with one derived from the JVM-wide shared client,
+     * plus the response cache, request pacing, statistics and streaming interceptors
+     * @param config the Config whose client is replaced
+     */
+    protected void configureClient(Config config) {
+        OkHttpClient.Builder builder = LlmClients.shared(new LlmClients.Settings(proxy, maxConnections,
+                keepAliveSeconds, http2, connectTimeout, readTimeout, writeTimeout, callTimeout)).newBuilder();
+        ResponseCache cache = ResponseCache.shared(tmpOutput.toPath().resolve("llm-cache"), cacheMode,
+                cacheMaxMB * 1024L * 1024L);
+        if (cache != null) {
+            // outermost, so a hit costs neither a rate limit slot nor an in-flight slot
+            builder.addInterceptor(cache);
+        }
+        if (requestsPerMinute > 0 || tokensPerMinute > 0 || rateLimitRetries > 0) {
+            // before the in-flight limit, so a retried request does not hold a slot while it backs off;
+            // keys are only picked here with a budget, otherwise the key rotation of the core stays in charge
+            builder.addInterceptor(RateLimiter.shared(apiKeys, requestsPerMinute, tokensPerMinute, rateLimitRetries, model));
+        }
+        if (inFlightLimit() > 0) {
+            builder.addInterceptor(InFlightLimiter.shared(inFlightLimit()));
+        }
+        builder.addInterceptor(LlmStats.get());
+        if (stream) {
+            builder.addInterceptor(new StreamingInterceptor(maxResponseTokens, streamUsage));
+        }
+        if (endpoints != null && endpoints.length > 0) {
+            // innermost, the url is only rewritten after the cache keyed the request on the configured url
+            builder.addInterceptor(EndpointRouter.shared(endpoints));
+        }
+        customizeClient(builder);
+        if (hedgePercentile > 0 && hedgeMaxExtra > 0) {
+            // latencies are taken on the wire, without the waits for a rate limit, an in-flight slot or an endpoint
+            builder.addNetworkInterceptor(RequestHedger.timer());
+        }
+        OkHttpClient client = builder.build();
+        if (hedgePercentile > 0 && hedgeMaxExtra > 0) {
+            // each copy goes through cache, pacing and statistics, the second one on the key with most headroom
+            OkHttpClient.Builder hedged = client.newBuilder();
+            hedged.interceptors().add(0, new RequestHedger(client, hedgePercentile, hedgeMaxExtra));
+            client = hedged.build();
+        }
+        if (repairCandidates > 1) {
+            // in front of everything else, each candidate then goes through cache, pacing and statistics
+            OkHttpClient.Builder speculative = client.newBuilder();
+            speculative.interceptors().add(0, new SpeculativeRepair(client, repairCandidates));
+            client = speculative.build();
+        }
+        if (sliceCache && "HITS".equalsIgnoreCase(phaseType)) {
+            // in front of the hedged and speculative copies, so a reused slice costs no request at all
+            OkHttpClient.Builder slices = client.newBuilder();
+            slices.interceptors().add(0, new SliceCache(tmpOutput.toPath().resolve("hits-slices")));
+            client = slices.build();
+        }
+        // outermost, every other interceptor reads the prompt kind it takes out of the messages
+        OkHttpClient.Builder marked = client.newBuilder();
+        marked.interceptors().add(0, new PromptMarkers());
+        client = marked.build();
+        config.setClient(client);
+    }
+
+    /**
+     * Hook for goals that change how LLM requests are handled, called before the client is built
+     * @param builder the client builder with the interceptors of the plugin parameters
+     */
+    protected void customizeClient(OkHttpClient.Builder builder) {
     }
 
     /**
@@ -341,6 +746,18 @@ public class ProjectTestMojo
     }
 
     public static List<String> listClassPaths(MavenProject project, DependencyGraphBuilder dependencyGraphBuilder) {
+        return listClassPaths(project, dependencyGraphBuilder, null);
+    }
+
+    /**
+     * List the class paths of the project: its artifact, its compile class path elements and every dependency.
+     * The dependency part is the expensive graph walk, it is cached under cacheDir when one is given.
+     * @param project the project
+     * @param dependencyGraphBuilder the dependency graph builder
+     * @param cacheDir the class path cache directory, or null to always walk the dependency graph
+     * @return the class paths
+     */
+    public static List<String> listClassPaths(MavenProject project, DependencyGraphBuilder dependencyGraphBuilder, Path cacheDir) {
         List<String> classPaths = new ArrayList<>();
         if (project.getPackaging().equals("jar")) {
             Path artifactPath = Paths.get(project.getBuild().getDirectory()).resolve(project.getBuild().getFinalName() + ".jar");
@@ -351,6 +768,28 @@ public class ProjectTestMojo
         }
         try {
             classPaths.addAll(project.getCompileClasspathElements());
+        } catch (Exception e) {
+            System.out.println(e);
+        }
+
+        ClassPathCache cache = cacheDir == null ? null : new ClassPathCache(cacheDir, project);
+        String pomHash = cache == null ? "" : ClassPathCache.pomHash(project);
+        List<String> dependencies = pomHash.isEmpty() ? null : cache.load(pomHash);
+        if (dependencies == null) {
+            dependencies = listDependencyPaths(project, dependencyGraphBuilder);
+            if (dependencies != null && !pomHash.isEmpty()) {
+                cache.store(pomHash, dependencies);
+            }
+        }
+        if (dependencies != null) {
+            classPaths.addAll(dependencies);
+        }
+        return classPaths;
+    }
+
+    private static List<String> listDependencyPaths(MavenProject project, DependencyGraphBuilder dependencyGraphBuilder) {
+        List<String> dependencies = new ArrayList<>();
+        try {
             Class<?> clazz = project.getClass();
             Field privateField = clazz.getDeclaredField("projectBuilderConfiguration");
             privateField.setAccessible(true);
@@ -361,13 +800,14 @@ public class ProjectTestMojo
             ProjectParser.walkDep(root, depSet);
             for (DependencyNode dep : depSet) {
                 if (dep.getArtifact().getFile() != null) {
-                    classPaths.add(dep.getArtifact().getFile().getAbsolutePath());
+                    dependencies.add(dep.getArtifact().getFile().getAbsolutePath());
                 }
             }
         } catch (Exception e) {
             System.out.println(e);
+            return null;
         }
-        return classPaths;
+        return dependencies;
     }
 
 }
\ No newline at end of file
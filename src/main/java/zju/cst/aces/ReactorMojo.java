@@ -0,0 +1,107 @@
+package zju.cst.aces;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.api.impl.ProjectImpl;
+import zju.cst.aces.batch.CostEstimator;
+import zju.cst.aces.batch.JobScheduler;
+import zju.cst.aces.batch.MethodTarget;
+import zju.cst.aces.batch.ProjectClasses;
+import zju.cst.aces.batch.TargetRunner;
+import zju.cst.aces.batch.TokenCounter;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ChatUniTest maven plugin for multi-module projects: every class (or targets.csv row) of every module
+ * in the reactor goes to one shared pool sized by maxThreads
+ */
+
+@Mojo(name = "reactor", aggregator = true)
+public class ReactorMojo extends TargetsMojo {
+    /**
+     * classes: every class of every module; targets: the rows of targetsFile
+     */
+    @Parameter(property = "reactorJobs", defaultValue = "classes")
+    public String reactorJobs;
+
+    /**
+     * Generate tests for all modules of the reactor
+     * @throws MojoExecutionException
+     */
+    public void execute() throws MojoExecutionException {
+        log = getLog();
+        boolean targetJobs = "targets".equalsIgnoreCase(reactorJobs);
+        List<MethodTarget> targets = targetJobs ? readTargets() : null;
+
+        TokenCounter tokenCounter = costSchedule() ? TokenCounter.forModel(model) : null;
+        File promptDir = promptDir();
+        List<JobScheduler.Job> jobs = new ArrayList<>();
+        for (MavenProject module : session.getProjects()) {
+            if (module.getPackaging().equals("pom")) {
+                continue;
+            }
+            String moduleName = moduleName(module);
+            TargetRunner runner;
+            try {
+                Config moduleConfig = buildConfig(new ProjectImpl(module,
+                        listClassPaths(module, dependencyGraphBuilder, classPathCacheDir())), promptDir);
+                runner = new TargetRunner(this, module, moduleConfig);
+                runner.setJournal(openJournal(module));
+            } catch (RuntimeException e) {
+                log.warn("Skip module " + module.getArtifactId() + ": " + e.getMessage());
+                continue;
+            }
+            List<String> classes = ProjectClasses.list(module);
+            CostEstimator estimator = costSchedule()
+                    ? new CostEstimator(module, classes, dependencyDepth, tokenCounter) : null;
+            if (targetJobs && batchLines()) {
+                List<MethodTarget> moduleTargets = new ArrayList<>();
+                for (MethodTarget target : targets) {
+                    if (inModule(target, moduleName)) {
+                        moduleTargets.add(target);
+                    }
+                }
+                for (List<MethodTarget> group : TargetRunner.groupByMethod(moduleTargets)) {
+                    MethodTarget first = group.get(0);
+                    long cost = estimator == null ? 0 : estimator.cost(first.getClassName());
+                    jobs.add(new JobScheduler.Job(module.getArtifactId() + ":" + first.getMethodId(), cost,
+                            () -> runner.runLines(group)));
+                }
+            } else if (targetJobs) {
+                for (MethodTarget target : targets) {
+                    if (inModule(target, moduleName)) {
+                        long cost = estimator == null ? 0 : estimator.cost(target.getClassName());
+                        jobs.add(new JobScheduler.Job(module.getArtifactId() + ":" + target, cost, () -> runner.runMethod(target)));
+                    }
+                }
+            } else {
+                for (String className : classes) {
+                    long cost = estimator == null ? 0 : estimator.cost(className);
+                    jobs.add(new JobScheduler.Job(module.getArtifactId() + ":" + className, cost, () -> runner.runClass(className)));
+                }
+            }
+        }
+        if (costSchedule()) {
+            // one global order, so the most expensive jobs of every module start first
+            JobScheduler.sortByCost(jobs, stopWhenSuccess);
+        }
+
+        // a multithreaded job starts the method pool of the core, so only its class share of maxThreads runs at once
+        int parallelism = enableMultithreading ? JobScheduler.classParallelism(maxThreads)
+                : JobScheduler.defaultParallelism(maxThreads);
+        log.info(String.format("\n==========================\n[%s] Running %d jobs from %d modules on %s ...",
+                phaseType, jobs.size(), session.getProjects().size(),
+                virtualExecutor() ? "virtual threads" : parallelism + " threads"));
+        long start = System.currentTimeMillis();
+        int failed = newScheduler(parallelism).runAll(jobs);
+        log.info(String.format("\n==========================\n[%s] Finished %d jobs (%d failed) in %.1fs",
+                phaseType, jobs.size(), failed, (System.currentTimeMillis() - start) / 1000.0));
+        logRunStats();
+    }
+}
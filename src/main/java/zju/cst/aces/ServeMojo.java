@@ -0,0 +1,311 @@
+package zju.cst.aces;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import zju.cst.aces.batch.MethodTarget;
+import zju.cst.aces.batch.TargetRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatUniTest maven plugin daemon: keeps the project, class paths and Config warm and
+ * takes method/class jobs as JSON lines from stdin or a local socket.
+ *
+ * Job:      {"id": "1", "type": "method", "class": "a.B", "method": "m", "line": 12, "ctext": "...", "offset": 3, "methodsig": "m(int)"}
+ *           {"id": "2", "type": "class", "class": "a.B"}
+ *           {"type": "ping"} / {"type": "shutdown"}
+ * Response: {"id": "1", "status": "ok|error|pong|bye", "elapsedMs": 1234, "message": "..."}
+ */
+
+@Mojo(name = "serve")
+public class ServeMojo extends ProjectTestMojo {
+    /**
+     * Port to listen on (loopback only); 0 reads jobs from stdin and writes responses to stdout, in which case
+     * everything else printed to stdout (the Maven log included) goes to stderr while serving
+     */
+    @Parameter(property = "servePort", defaultValue = "0")
+    public int servePort;
+
+    @Parameter(property = "serveWorkers", defaultValue = "1")
+    public int serveWorkers;
+
+    private TargetRunner runner;
+    private ExecutorService workers;
+    private ServerSocket serverSocket;
+    private volatile boolean running = true;
+
+    /**
+     * Resolve the project once and serve jobs until shutdown or end of input
+     * @throws MojoExecutionException
+     */
+    public void execute() throws MojoExecutionException {
+        init();
+        runner = new TargetRunner(this, project, config);
+        workers = Executors.newFixedThreadPool(Math.max(1, serveWorkers));
+        try {
+            if (servePort > 0) {
+                serveSocket();
+            } else {
+                serveStdin();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("chatunitest:serve failed", e);
+        } finally {
+            awaitWorkers();
+        }
+        log.info("\n==========================\n[ChatUniTest] Server stopped");
+    }
+
+    private void serveStdin() throws IOException {
+        log.info(String.format("[%s] Serving %s, reading jobs from stdin ...", phaseType, project.getBasedir().getName()));
+        // stdout only carries responses, so a client never has to pick them out of the log
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8), true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while (running && (line = in.readLine()) != null) {
+                handle(line, out);
+            }
+            // responses of jobs still running are written before stdout is handed back
+            awaitWorkers();
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private void awaitWorkers() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serveSocket() throws IOException {
+        serverSocket = new ServerSocket(servePort, 50, InetAddress.getLoopbackAddress());
+        log.info(String.format("[%s] Serving %s on %s:%d ...", phaseType, project.getBasedir().getName(),
+                serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort()));
+        try {
+            while (running) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    break; // closed by shutdown
+                }
+                Thread connection = new Thread(() -> serveConnection(socket), "chatunitest-serve-" + socket.getPort());
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            String line;
+            while (running && (line = in.readLine()) != null) {
+                handle(line, out);
+            }
+        } catch (IOException e) {
+            log.warn("Connection closed: " + e.getMessage());
+        }
+    }
+
+    private void handle(String line, PrintWriter out) {
+        if (line.trim().isEmpty()) {
+            return;
+        }
+        Job job;
+        try {
+            job = Job.parse(line, lines);
+        } catch (RuntimeException e) {
+            respond(out, idOf(line), "error", 0, "Bad job: " + e.getMessage());
+            return;
+        }
+        switch (job.type) {
+            case "ping":
+                respond(out, job.id, "pong", 0, null);
+                return;
+            case "shutdown":
+                shutdown();
+                respond(out, job.id, "bye", 0, null);
+                return;
+            default:
+                break;
+        }
+        try {
+            workers.submit(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                    if (job.target == null) {
+                        runner.runClass(job.className);
+                    } else {
+                        runner.runMethod(job.target);
+                    }
+                    respond(out, job.id, "ok", System.currentTimeMillis() - start, null);
+                } catch (Exception | Error e) {
+                    log.warn("Job " + job.id + " failed: " + e.getMessage(), e);
+                    respond(out, job.id, "error", System.currentTimeMillis() - start, String.valueOf(e.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            respond(out, job.id, "error", 0, "Server is shutting down");
+        }
+    }
+
+    /**
+     * One validated line of input
+     */
+    static class Job {
+        final String id;
+        final String type;
+        final String className;
+        final MethodTarget target;
+
+        private Job(String id, String type, String className, MethodTarget target) {
+            this.id = id;
+            this.type = type;
+            this.className = className;
+            this.target = target;
+        }
+
+        /**
+         * @param line the JSON line
+         * @param defaultLine the target line of method jobs that give none
+         * @return the job
+         * @throws IllegalArgumentException when the line is not a valid job
+         */
+        static Job parse(String line, int defaultLine) {
+            JsonElement element;
+            try {
+                element = JsonParser.parseString(line);
+            } catch (JsonParseException e) {
+                throw new IllegalArgumentException("not JSON");
+            }
+            if (element == null || !element.isJsonObject()) {
+                throw new IllegalArgumentException("job must be a JSON object");
+            }
+            JsonObject job = element.getAsJsonObject();
+            String id = string(job, "id");
+            String type = string(job, "type");
+            if (type == null) {
+                type = "method";
+            }
+            switch (type) {
+                case "ping":
+                case "shutdown":
+                    return new Job(id, type, null, null);
+                case "class":
+                case "method":
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown job type: " + type);
+            }
+            String className = string(job, "class");
+            if (className == null || className.trim().isEmpty()) {
+                throw new IllegalArgumentException("class is required");
+            }
+            if ("class".equals(type)) {
+                return new Job(id, type, className, null);
+            }
+            String method = string(job, "method");
+            if (method == null || method.trim().isEmpty()) {
+                throw new IllegalArgumentException("method is required");
+            }
+            MethodTarget target = new MethodTarget("", "", integer(job, "line", defaultLine), className, method,
+                    string(job, "ctext"), job.has("offset") ? integer(job, "offset", 0) : null,
+                    string(job, "methodsig"));
+            return new Job(id, type, className, target);
+        }
+    }
+
+    /**
+     * @return the id of a job line that did not validate, so its error can still be matched to it
+     */
+    private static String idOf(String line) {
+        try {
+            JsonElement element = JsonParser.parseString(line);
+            JsonElement id = element.isJsonObject() ? element.getAsJsonObject().get("id") : null;
+            return id != null && id.isJsonPrimitive() ? id.getAsString() : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void shutdown() {
+        running = false;
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void respond(PrintWriter out, String id, String status, long elapsedMs, String message) {
+        JsonObject response = new JsonObject();
+        if (id != null) {
+            response.addProperty("id", id);
+        }
+        response.addProperty("status", status);
+        response.addProperty("elapsedMs", elapsedMs);
+        if (message != null) {
+            response.addProperty("message", message);
+        }
+        synchronized (out) {
+            out.println(response.toString());
+        }
+    }
+
+    private static String string(JsonObject job, String key) {
+        JsonElement value = job.get(key);
+        if (value == null || value.isJsonNull()) {
+            return null;
+        }
+        if (!value.isJsonPrimitive()) {
+            throw new IllegalArgumentException(key + " must be a string");
+        }
+        return value.getAsString();
+    }
+
+    private static int integer(JsonObject job, String key, int defaultValue) {
+        JsonElement value = job.get(key);
+        if (value == null || value.isJsonNull()) {
+            return defaultValue;
+        }
+        try {
+            if (value.isJsonPrimitive()) {
+                return Integer.parseInt(value.getAsString().trim());
+            }
+        } catch (NumberFormatException ignored) {
+            // reported below
+        }
+        throw new IllegalArgumentException(key + " must be an integer");
+    }
+}
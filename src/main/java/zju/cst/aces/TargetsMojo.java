@@ -0,0 +1,155 @@
+package zju.cst.aces;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import zju.cst.aces.batch.JobScheduler;
+import zju.cst.aces.batch.MethodTarget;
+import zju.cst.aces.batch.TargetRunner;
+import zju.cst.aces.batch.TargetsReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ChatUniTest maven plugin for running every row of targets.csv inside one Maven JVM
+ */
+
+@Mojo(name = "targets")
+public class TargetsMojo extends ProjectTestMojo {
+    @Parameter(property = "targetsFile", defaultValue = "/app/input/common/targets.csv")
+    public File targetsFile;
+
+    @Parameter(property = "locMethodMeta", defaultValue = "/app/output/instr/loc-method.meta")
+    public File locMethodMeta;
+
+    /**
+     * Module column value handled by this execution; defaults to the module path relative to the execution root
+     */
+    @Parameter(property = "targetsModule")
+    public String targetsModule;
+
+    @Parameter(property = "ctextColumn", defaultValue = "constraint_text")
+    public String ctextColumn;
+
+    @Parameter(property = "offsetColumn", defaultValue = "offset_in_method")
+    public String offsetColumn;
+
+    @Parameter(property = "methodsigColumn", defaultValue = "method_signature")
+    public String methodsigColumn;
+
+    @Parameter(property = "methodColumn", defaultValue = "method")
+    public String methodColumn;
+
+    /**
+     * Generate tests for every target of targets.csv that belongs to this module
+     * @throws MojoExecutionException
+     */
+    public void execute() throws MojoExecutionException {
+        log = getLog();
+        if (project.getPackaging().equals("pom")) {
+            log.info("\n==========================\n[ChatUniTest] Skip pom-packaging ...");
+            return;
+        }
+        List<MethodTarget> targets = moduleTargets();
+        if (targets.isEmpty()) {
+            log.info(String.format("[%s] No targets for module '%s' in %s", phaseType,
+                    targetsModule != null ? targetsModule : moduleName(project), targetsFile));
+            return;
+        }
+
+        init();
+        log.info(String.format("\n==========================\n[%s] Generating tests for %d targets of %s ...",
+                phaseType, targets.size(), project.getBasedir().getName()));
+        TargetRunner runner = new TargetRunner(this, project, config);
+        runner.setJournal(openJournal(project));
+        AtomicInteger skipped = new AtomicInteger();
+        List<JobScheduler.Job> jobs = new ArrayList<>();
+        if (batchLines()) {
+            for (List<MethodTarget> group : TargetRunner.groupByMethod(targets)) {
+                jobs.add(new JobScheduler.Job(group.get(0).getMethodId(), () -> {
+                    if (!runner.runLines(group)) {
+                        skipped.addAndGet(group.size());
+                    }
+                }));
+            }
+        } else {
+            for (MethodTarget target : targets) {
+                jobs.add(new JobScheduler.Job(target.toString(), () -> {
+                    if (!runner.runMethod(target)) {
+                        skipped.incrementAndGet();
+                    }
+                }));
+            }
+        }
+        long start = System.currentTimeMillis();
+        // targets run one at a time unless they get their own virtual threads
+        int failed = newScheduler(1).runAll(jobs);
+        log.info(String.format("\n==========================\n[%s] Finished %d targets (%d skipped, %d failed) in %.1fs",
+                phaseType, targets.size(), skipped.get(), failed, (System.currentTimeMillis() - start) / 1000.0));
+        logRunStats();
+    }
+
+    /**
+     * Read targets.csv and keep the rows of the current module
+     */
+    protected List<MethodTarget> moduleTargets() throws MojoExecutionException {
+        String module = targetsModule != null ? normalizeModule(targetsModule) : moduleName(project);
+        List<MethodTarget> targets = new ArrayList<>();
+        for (MethodTarget target : readTargets()) {
+            if (inModule(target, module)) {
+                targets.add(target);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * @return whether the target lines of a method are generated for together, only in HITS mode
+     */
+    protected boolean batchLines() {
+        return batchLines && "HITS".equalsIgnoreCase(phaseType);
+    }
+
+    protected List<MethodTarget> readTargets() throws MojoExecutionException {
+        try {
+            return new TargetsReader(ctextColumn, offsetColumn, methodsigColumn, methodColumn, log)
+                    .read(targetsFile.toPath(), locMethodMeta == null ? null : locMethodMeta.toPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to read targets file " + targetsFile, e);
+        }
+    }
+
+    /**
+     * @return the module path of the given project relative to the execution root, as written in targets.csv
+     */
+    protected String moduleName(MavenProject module) {
+        if (session == null || session.getExecutionRootDirectory() == null) {
+            return "";
+        }
+        Path root = Paths.get(session.getExecutionRootDirectory()).toAbsolutePath().normalize();
+        Path base = module.getBasedir().toPath().toAbsolutePath().normalize();
+        return base.startsWith(root) ? normalizeModule(root.relativize(base).toString()) : "";
+    }
+
+    protected static boolean inModule(MethodTarget target, String module) {
+        return normalizeModule(target.getModule()).equals(module);
+    }
+
+    private static String normalizeModule(String module) {
+        String m = module == null ? "" : module.trim().replace('\\', '/');
+        while (m.startsWith("./")) {
+            m = m.substring(2);
+        }
+        while (m.endsWith("/")) {
+            m = m.substring(0, m.length() - 1);
+        }
+        return m.equals(".") ? "" : m;
+    }
+}
@@ -0,0 +1,126 @@
+package zju.cst.aces.batch;
+
+import org.apache.maven.plugin.logging.Log;
+import zju.cst.aces.api.Task;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.api.impl.RunnerImpl;
+import zju.cst.aces.probe.MethodCoverage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Generates tests for one method one at a time and stops once the focal method is covered well enough,
+ * instead of always asking for a fixed number of tests.
+ */
+public class AdaptiveTests {
+    private static final long COVERAGE_TIMEOUT_MILLIS = 60_000;
+
+    private final Log log;
+    private final int maxTests;
+    private final double targetCoverage;
+    private final int patience;
+
+    /**
+     * @param maxTests the most tests to generate, the testNumber parameter
+     * @param targetCoverage the focal method line coverage at which generation stops, 0 to 1
+     * @param patience how many tests in a row may add no coverage before generation stops
+     */
+    public AdaptiveTests(Log log, int maxTests, double targetCoverage, int patience) {
+        this.log = log;
+        this.maxTests = maxTests;
+        this.targetCoverage = targetCoverage;
+        this.patience = Math.max(1, patience);
+    }
+
+    /**
+     * @param config a Config that generates a single test per task
+     * @param className the focal class
+     * @param methodName the focal method
+     * @return how many tests were generated
+     */
+    public int run(Config config, String className, String methodName) throws Exception {
+        Path testOutput = config.getTestOutput();
+        if (testOutput == null || !MethodCoverage.available()) {
+            log.warn("Adaptive test count needs a JDK and a testOutput directory, generating " + maxTests + " tests");
+            for (int i = 0; i < maxTests; i++) {
+                new Task(config, new RunnerImpl(config)).startMethodTask(className, methodName);
+            }
+            return maxTests;
+        }
+        MethodCoverage coverage = new MethodCoverage(config.getClassPaths(),
+                config.getTmpOutput().resolve("coverage"), log, COVERAGE_TIMEOUT_MILLIS);
+        Set<Path> tests = new LinkedHashSet<>();
+        Set<Integer> covered = new TreeSet<>();
+        int stale = 0;
+        int round = 0;
+        while (round < maxTests) {
+            round++;
+            long start = System.currentTimeMillis();
+            new Task(config, new RunnerImpl(config)).startMethodTask(className, methodName);
+            tests.addAll(testsFor(testOutput, className, methodName, start));
+            MethodCoverage.Result result = coverage.measure(className, methodName, new ArrayList<>(tests));
+            boolean gained = covered.addAll(result.getCovered());
+            double ratio = result.getExecutable().isEmpty() ? 0 : (double) covered.size() / result.getExecutable().size();
+            log.info(String.format("%s#%s: test %d covers %d/%d lines (%.0f%%)", className, methodName, round,
+                    covered.size(), result.getExecutable().size(), ratio * 100));
+            if (ratio >= targetCoverage) {
+                break;
+            }
+            stale = gained ? 0 : stale + 1;
+            if (stale >= patience) {
+                log.info(String.format("%s#%s: no new lines in %d tests, stopping", className, methodName, stale));
+                break;
+            }
+        }
+        return round;
+    }
+
+    /**
+     * The tests generated for one focal method since the given time. Other targets may write tests at the same
+     * time, so a test has to be named after the focal class, <code>{SimpleName}_*.java</code> in its package, and
+     * name the focal method, in its file name or as a call in its source.
+     * @param dir the test output directory
+     * @param className the fully qualified focal class
+     * @param methodName the focal method
+     * @param since the time the generation started
+     * @return the matching test sources, sorted
+     */
+    static List<Path> testsFor(Path dir, String className, String methodName, long since) throws IOException {
+        int dot = className.lastIndexOf('.');
+        Path packageDir = dot < 0 ? dir : dir.resolve(className.substring(0, dot).replace('.', '/'));
+        String prefix = className.substring(dot + 1) + "_";
+        if (!Files.isDirectory(packageDir)) {
+            return new ArrayList<>();
+        }
+        List<Path> tests = new ArrayList<>();
+        try (Stream<Path> files = Files.list(packageDir)) {
+            for (Path file : files.sorted().collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(".java") && file.toFile().lastModified() >= since
+                        && testsMethod(file, name.substring(prefix.length()), methodName)) {
+                    tests.add(file);
+                }
+            }
+        }
+        return tests;
+    }
+
+    private static boolean testsMethod(Path file, String nameTail, String methodName) throws IOException {
+        if (methodName == null || methodName.isEmpty() || nameTail.startsWith(methodName + "_")) {
+            return true;
+        }
+        String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        return Pattern.compile("\\b" + Pattern.quote(methodName) + "\\s*\\(").matcher(source).find();
+    }
+}
@@ -0,0 +1,150 @@
+package zju.cst.aces.batch;
+
+import org.apache.maven.project.MavenProject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Estimates how expensive a class job is before it runs: the tokens of the class itself plus the tokens of the
+ * project classes it pulls into the prompt context within dependencyDepth hops.
+ */
+public class CostEstimator {
+    private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+(static\\s+)?([\\w.]+?)(\\.\\*)?\\s*;", Pattern.MULTILINE);
+    private static final Pattern TYPE_NAME = Pattern.compile("\\b[A-Z]\\w*\\b");
+
+    private final MavenProject project;
+    private final int dependencyDepth;
+    private final TokenCounter tokenCounter;
+    private final Map<String, List<String>> classesBySimpleName = new HashMap<>();
+    private final Map<String, String> sources = new HashMap<>();
+    private final Map<String, Integer> tokens = new HashMap<>();
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+
+    public CostEstimator(MavenProject project, Collection<String> classes, int dependencyDepth, TokenCounter tokenCounter) {
+        this.project = project;
+        this.dependencyDepth = dependencyDepth;
+        this.tokenCounter = tokenCounter;
+        for (String className : classes) {
+            classesBySimpleName.computeIfAbsent(simpleName(className), k -> new ArrayList<>()).add(className);
+        }
+    }
+
+    /**
+     * @param className the fully qualified class name
+     * @return the estimated prompt tokens of the class and its dependency context
+     */
+    public long cost(String className) {
+        long cost = tokens(className);
+        Set<String> visited = new HashSet<>();
+        visited.add(className);
+        Deque<String> frontier = new ArrayDeque<>();
+        frontier.add(className);
+        for (int depth = 0; depth < dependencyDepth && !frontier.isEmpty(); depth++) {
+            Deque<String> next = new ArrayDeque<>();
+            for (String current : frontier) {
+                for (String dep : dependencies(current)) {
+                    if (visited.add(dep)) {
+                        cost += tokens(dep);
+                        next.add(dep);
+                    }
+                }
+            }
+            frontier = next;
+        }
+        return cost;
+    }
+
+    /**
+     * Order classes by estimated cost
+     * @param classes the classes
+     * @param cheapestFirst true to run the cheapest classes first, otherwise the most expensive ones go first
+     * @return a new sorted list
+     */
+    public List<String> order(Collection<String> classes, boolean cheapestFirst) {
+        Map<String, Long> costs = new HashMap<>();
+        for (String className : classes) {
+            costs.put(className, cost(className));
+        }
+        Comparator<String> byCost = Comparator.comparingLong(costs::get);
+        List<String> sorted = new ArrayList<>(classes);
+        sorted.sort(cheapestFirst ? byCost : byCost.reversed());
+        return sorted;
+    }
+
+    private int tokens(String className) {
+        return tokens.computeIfAbsent(className, k -> tokenCounter.count(source(k)));
+    }
+
+    /**
+     * Project classes referenced by simple name that are in the same package or imported
+     */
+    private Set<String> dependencies(String className) {
+        Set<String> cached = dependencies.get(className);
+        if (cached != null) {
+            return cached;
+        }
+        String source = source(className);
+        String pkg = packageName(className);
+        Set<String> explicitImports = new HashSet<>();
+        Set<String> wildcardImports = new HashSet<>();
+        Matcher imports = IMPORT.matcher(source);
+        while (imports.find()) {
+            (imports.group(3) != null ? wildcardImports : explicitImports).add(imports.group(2));
+        }
+        Set<String> deps = new LinkedHashSet<>();
+        Matcher names = TYPE_NAME.matcher(source);
+        while (names.find()) {
+            List<String> candidates = classesBySimpleName.get(names.group());
+            if (candidates == null) {
+                continue;
+            }
+            for (String candidate : candidates) {
+                if (!candidate.equals(className) && (explicitImports.contains(candidate)
+                        || packageName(candidate).equals(pkg) || wildcardImports.contains(packageName(candidate)))) {
+                    deps.add(candidate);
+                }
+            }
+        }
+        dependencies.put(className, deps);
+        return deps;
+    }
+
+    private String source(String className) {
+        return sources.computeIfAbsent(className, k -> {
+            Path file = ProjectClasses.sourceFile(project, k);
+            if (file == null) {
+                return "";
+            }
+            try {
+                return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return "";
+            }
+        });
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static String packageName(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot < 0 ? "" : className.substring(0, dot);
+    }
+}
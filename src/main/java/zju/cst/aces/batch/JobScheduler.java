@@ -0,0 +1,203 @@
+package zju.cst.aces.batch;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs class/method jobs, possibly from several modules, on one shared bounded work-stealing pool,
+ * or on one virtual thread per job when requested and the JDK supports it.
+ */
+public class JobScheduler {
+
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    public static class Job {
+        private final String name;
+        private final long cost;
+        private final Work work;
+
+        public Job(String name, Work work) {
+            this(name, 0, work);
+        }
+
+        /**
+         * @param cost the estimated cost, only used by {@link #sortByCost}
+         */
+        public Job(String name, long cost, Work work) {
+            this.name = name;
+            this.cost = cost;
+            this.work = work;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCost() {
+            return cost;
+        }
+    }
+
+    private final int parallelism;
+    private final boolean virtualThreads;
+    private final int maxVirtualJobs;
+    private final Log log;
+
+    public JobScheduler(int parallelism, Log log) {
+        this(parallelism, false, parallelism, log);
+    }
+
+    /**
+     * @param parallelism the pool size, ignored when virtual threads are used
+     * @param virtualThreads run every job on its own virtual thread (JDK 21+), falling back to the pool
+     * @param maxVirtualJobs how many jobs may run at once on virtual threads; they compile and run tests and
+     *                       start core pools, which only the LLM requests are bounded for otherwise
+     */
+    public JobScheduler(int parallelism, boolean virtualThreads, int maxVirtualJobs, Log log) {
+        this.parallelism = Math.max(1, parallelism);
+        this.virtualThreads = virtualThreads;
+        this.maxVirtualJobs = Math.max(1, maxVirtualJobs);
+        this.log = log;
+    }
+
+    /**
+     * @return whether this JVM can create virtual threads
+     */
+    public static boolean virtualThreadsSupported() {
+        return newVirtualThreadExecutor() != null;
+    }
+
+    /**
+     * Looked up reflectively so the plugin still targets Java 8
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        if (virtualThreads) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                log.info("Running jobs on virtual threads, at most " + maxVirtualJobs + " at once");
+                return executor;
+            }
+            log.warn("Virtual threads need JDK 21+, running on a pool of " + parallelism + " platform threads");
+        }
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        // keep the plugin realm as context class loader, the default factory would hand out the system one
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setContextClassLoader(loader);
+            return thread;
+        };
+        return new ForkJoinPool(parallelism, factory, null, true);
+    }
+
+    /**
+     * Same default as the core thread pools: CPU count * 5 when maxThreads is not set
+     */
+    public static int defaultParallelism(int maxThreads) {
+        return maxThreads > 0 ? maxThreads : Runtime.getRuntime().availableProcessors() * 5;
+    }
+
+    /**
+     * The class-level share of maxThreads, as the core splits it: a class task runs its methods on a pool of
+     * about maxThreads / classThreads threads, so running more class (or method) tasks at once than this would
+     * multiply the compiles, test runs and LLM calls beyond maxThreads
+     */
+    public static int classParallelism(int maxThreads) {
+        return (int) Math.ceil(defaultParallelism(maxThreads) / 10.0);
+    }
+
+    /**
+     * Sort jobs by their estimated cost, the sort is stable so equal costs keep discovery order
+     * @param cheapestFirst true to start the cheapest jobs first, otherwise the most expensive ones go first
+     */
+    public static void sortByCost(List<Job> jobs, boolean cheapestFirst) {
+        Comparator<Job> byCost = Comparator.comparingLong(Job::getCost);
+        jobs.sort(cheapestFirst ? byCost : byCost.reversed());
+    }
+
+    /**
+     * Run every job and wait for all of them, jobs are started in list order
+     * @param jobs the jobs
+     * @return the number of failed jobs
+     */
+    public int runAll(List<Job> jobs) {
+        ExecutorService pool = newExecutor();
+        // a thread per job would start every job at once, the permits keep them to maxVirtualJobs
+        Semaphore permits = pool instanceof ForkJoinPool ? null : new Semaphore(maxVirtualJobs, true);
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (Job job : jobs) {
+                futures.add(pool.submit(() -> {
+                    try {
+                        if (permits != null) {
+                            permits.acquire();
+                        }
+                        try {
+                            job.work.run();
+                        } finally {
+                            if (permits != null) {
+                                permits.release();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failed.incrementAndGet();
+                        log.warn("Job interrupted: " + job.getName());
+                        return;
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        log.warn("Job failed: " + job.getName() + ": " + e.getMessage(), e);
+                    }
+                    log.info(String.format("[%d/%d] %s done", done.incrementAndGet(), jobs.size(), job.getName()));
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failed.incrementAndGet();
+                    log.warn("Job crashed: " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted, cancelling remaining jobs");
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return failed.get();
+    }
+}
@@ -0,0 +1,68 @@
+package zju.cst.aces.batch;
+
+/**
+ * One row of targets.csv resolved to a focal class and method.
+ */
+public class MethodTarget {
+    private final String module;
+    private final String file;
+    private final int line;
+    private final String className;
+    private final String methodName;
+    private final String constraintText;
+    private final Integer offset;
+    private final String methodSig;
+
+    public MethodTarget(String module, String file, int line, String className, String methodName,
+                        String constraintText, Integer offset, String methodSig) {
+        this.module = module;
+        this.file = file;
+        this.line = line;
+        this.className = className;
+        this.methodName = methodName;
+        this.constraintText = constraintText;
+        this.offset = offset;
+        this.methodSig = methodSig;
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getConstraintText() {
+        return constraintText;
+    }
+
+    public Integer getOffset() {
+        return offset;
+    }
+
+    public String getMethodSig() {
+        return methodSig;
+    }
+
+    public String getMethodId() {
+        return className + "#" + methodName;
+    }
+
+    @Override
+    public String toString() {
+        return getMethodId() + ":" + line;
+    }
+}
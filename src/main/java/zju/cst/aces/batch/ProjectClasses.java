@@ -0,0 +1,81 @@
+package zju.cst.aces.batch;
+
+import org.apache.maven.project.MavenProject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lists the classes of a module from its compile source roots.
+ */
+public class ProjectClasses {
+
+    /**
+     * @param project the module
+     * @return fully qualified names of every top-level source file, in path order
+     */
+    public static List<String> list(MavenProject project) {
+        List<String> classes = new ArrayList<>();
+        for (Path root : sourceRoots(project)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                classes.addAll(files
+                        .filter(p -> p.toString().endsWith(".java"))
+                        .filter(p -> !p.getFileName().toString().equals("package-info.java")
+                                && !p.getFileName().toString().equals("module-info.java"))
+                        .sorted()
+                        .map(p -> toClassName(root, p))
+                        .collect(Collectors.toList()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return classes;
+    }
+
+    static List<Path> sourceRoots(MavenProject project) {
+        List<Path> roots = new ArrayList<>();
+        if (project.getCompileSourceRoots() != null) {
+            for (String root : project.getCompileSourceRoots()) {
+                Path path = Paths.get(root);
+                if (Files.isDirectory(path)) {
+                    roots.add(path);
+                }
+            }
+        }
+        if (roots.isEmpty()) {
+            Path path = project.getBasedir().toPath().resolve("src/main/java");
+            if (Files.isDirectory(path)) {
+                roots.add(path);
+            }
+        }
+        return roots;
+    }
+
+    static String toClassName(Path root, Path file) {
+        String rel = root.relativize(file).toString().replace('\\', '/');
+        return rel.substring(0, rel.length() - ".java".length()).replace('/', '.');
+    }
+
+    /**
+     * @param project the module
+     * @param className the fully qualified class name
+     * @return the source file of the class, or null when it is not under a compile source root
+     */
+    public static Path sourceFile(MavenProject project, String className) {
+        String rel = className.replace('.', '/') + ".java";
+        for (Path root : sourceRoots(project)) {
+            Path file = root.resolve(rel);
+            if (Files.isRegularFile(file)) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,143 @@
+package zju.cst.aces.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only JSONL journal of finished class/method tasks. Each line records the task, the hash of its
+ * inputs and its outcome, so an interrupted run can be resumed without redoing finished tasks.
+ */
+public class RunJournal {
+    public static final String SUCCESS = "success";
+    public static final String FAILED = "failed";
+
+    private static final Gson GSON = new Gson();
+
+    private final Path file;
+    private final boolean resume;
+    private final Log log;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param file the journal file, created on the first record
+     * @param resume whether tasks already recorded as successful with the same inputs are skipped
+     * @param log the logger
+     */
+    public RunJournal(Path file, boolean resume, Log log) {
+        this.file = file;
+        this.resume = resume;
+        this.log = log;
+        if (resume) {
+            load();
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return true when resuming and the task already succeeded with the same input hash
+     */
+    public boolean isDone(String kind, String id, String inputHash) {
+        if (!resume) {
+            return false;
+        }
+        Entry entry = entries.get(key(kind, id));
+        return entry != null && SUCCESS.equals(entry.outcome) && inputHash.equals(entry.inputHash);
+    }
+
+    /**
+     * Append one finished task to the journal
+     */
+    public synchronized void record(String kind, String id, String inputHash, String outcome, long elapsedMs) {
+        Entry entry = new Entry();
+        entry.kind = kind;
+        entry.id = id;
+        entry.inputHash = inputHash;
+        entry.outcome = outcome;
+        entry.elapsedMs = elapsedMs;
+        entry.time = System.currentTimeMillis();
+        entries.put(key(kind, id), entry);
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(GSON.toJson(entry));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write run journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Later lines win; a line cut off by a crash is ignored
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    Entry entry = GSON.fromJson(line, Entry.class);
+                    if (entry != null && entry.kind != null && entry.id != null) {
+                        entries.put(key(entry.kind, entry.id), entry);
+                        lines++;
+                    }
+                } catch (JsonSyntaxException e) {
+                    log.warn("Ignore malformed run journal line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read run journal " + file + ": " + e.getMessage());
+        }
+        log.info(String.format("Resuming from %s (%d entries)", file, lines));
+    }
+
+    private static String key(String kind, String id) {
+        return kind + "|" + id;
+    }
+
+    public static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        String kind;
+        String id;
+        String inputHash;
+        String outcome;
+        long elapsedMs;
+        long time;
+    }
+}
@@ -0,0 +1,182 @@
+package zju.cst.aces.batch;
+
+import org.apache.maven.project.MavenProject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Maps the classes of a module to their source files, over its compile and test source roots including generated
+ * sources. Sources are read once and kept with a table of line offsets, so fetching one line of a class is a lookup.
+ * One index per module and JVM; a source file that changes on disk is read again.
+ */
+public class SourceIndex {
+    private static final int MAX_CACHED_FILES = 128;
+    private static final Map<Path, SourceIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final Map<String, Path> files = new ConcurrentHashMap<>();
+    private final Map<Path, Source> sources = Collections.synchronizedMap(
+            new LinkedHashMap<Path, Source>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, Source> eldest) {
+                    return size() > MAX_CACHED_FILES;
+                }
+            });
+
+    private SourceIndex(MavenProject project) {
+        for (Path root : roots(project)) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.filter(p -> p.toString().endsWith(".java")).forEach(p ->
+                        files.putIfAbsent(ProjectClasses.toClassName(root, p), p));
+            } catch (IOException ignored) {
+                // an unreadable root has no classes
+            }
+        }
+    }
+
+    /**
+     * @param project the module
+     * @return the index of the module, built on first use
+     */
+    public static SourceIndex of(MavenProject project) {
+        return INDEXES.computeIfAbsent(project.getBasedir().toPath().toAbsolutePath().normalize(),
+                k -> new SourceIndex(project));
+    }
+
+    /**
+     * Compile roots first, then test roots, then the conventional and generated directories the project model
+     * may not list before the generating plugins ran
+     */
+    static List<Path> roots(MavenProject project) {
+        Set<Path> roots = new LinkedHashSet<>(ProjectClasses.sourceRoots(project));
+        if (project.getTestCompileSourceRoots() != null) {
+            for (String root : project.getTestCompileSourceRoots()) {
+                roots.add(Paths.get(root));
+            }
+        }
+        Path base = project.getBasedir().toPath();
+        roots.add(base.resolve("src/main/java"));
+        roots.add(base.resolve("src/test/java"));
+        Path build = project.getBuild() != null && project.getBuild().getDirectory() != null
+                ? Paths.get(project.getBuild().getDirectory()) : base.resolve("target");
+        for (String generated : new String[]{"generated-sources", "generated-test-sources"}) {
+            Path dir = build.resolve(generated);
+            if (Files.isDirectory(dir)) {
+                try (Stream<Path> children = Files.list(dir)) {
+                    children.filter(Files::isDirectory).sorted().forEach(roots::add);
+                } catch (IOException ignored) {
+                    // no generated sources
+                }
+            }
+        }
+        List<Path> existing = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                existing.add(root);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @param className the fully qualified name, nested classes resolve to the file of their top-level class
+     * @return the source file, or null
+     */
+    public Path path(String className) {
+        if (className == null) {
+            return null;
+        }
+        String name = className.replace('$', '.');
+        while (true) {
+            Path file = files.get(name);
+            if (file != null) {
+                return file;
+            }
+            int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                return null;
+            }
+            name = name.substring(0, dot);
+        }
+    }
+
+    /**
+     * @return the whole source of the class, or "" when it is not found
+     */
+    public String content(String className) {
+        Source source = source(className);
+        return source == null ? "" : source.text;
+    }
+
+    /**
+     * @param line the 1-based line number
+     * @return the line without its terminator, or "" when the class or the line does not exist
+     */
+    public String line(String className, int line) {
+        Source source = source(className);
+        if (source == null || line < 1 || line > source.lineStarts.length) {
+            return "";
+        }
+        int start = source.lineStarts[line - 1];
+        int end = line < source.lineStarts.length ? source.lineStarts[line] - 1 : source.text.length();
+        if (end > start && source.text.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return source.text.substring(start, Math.max(start, end));
+    }
+
+    private Source source(String className) {
+        Path file = path(className);
+        if (file == null) {
+            return null;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            Source cached = sources.get(file);
+            if (cached != null && cached.modified == modified) {
+                return cached;
+            }
+            Source source = new Source(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), modified);
+            sources.put(file, source);
+            return source;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class Source {
+        final String text;
+        final long modified;
+        final int[] lineStarts;
+
+        Source(String text, long modified) {
+            this.text = text;
+            this.modified = modified;
+            int count = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            lineStarts = new int[count];
+            int line = 1;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    lineStarts[line++] = i + 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package zju.cst.aces.batch;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.maven.project.MavenProject;
+import zju.cst.aces.ProjectTestMojo;
+import zju.cst.aces.api.Task;
+import zju.cst.aces.api.config.Config;
+import zju.cst.aces.api.impl.RunnerImpl;
+import zju.cst.aces.hits.HitsPrompts;
+import zju.cst.aces.hits.TargetValues;
+import zju.cst.aces.probe.MethodCoverage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs method/class targets against a project whose class paths and Config are already resolved,
+ * so a single JVM can serve many targets.
+ */
+public class TargetRunner {
+    private static final long COVERAGE_TIMEOUT_MILLIS = 60_000;
+
+    private final ProjectTestMojo mojo;
+    private final MavenProject project;
+    private final Config baseConfig;
+    private RunJournal journal;
+
+    public TargetRunner(ProjectTestMojo mojo, MavenProject project, Config baseConfig) {
+        this.mojo = mojo;
+        this.project = project;
+        this.baseConfig = baseConfig;
+    }
+
+    public MavenProject getProject() {
+        return project;
+    }
+
+    /**
+     * Record every finished target in the journal, and skip the ones it already holds when resuming
+     * @param journal the journal, or null to disable journaling
+     */
+    public void setJournal(RunJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Generate tests for one method target
+     * @param target the target
+     * @return false when the target was skipped because the journal already holds it
+     * @throws Exception
+     */
+    public boolean runMethod(MethodTarget target) throws Exception {
+        String inputHash = journal == null ? null : RunJournal.hash(mojo.inputFingerprint(),
+                classSource(target.getClassName()), target.getMethodId(), String.valueOf(target.getLine()),
+                target.getConstraintText(), String.valueOf(target.getOffset()), target.getMethodSig());
+        return journaled("method", target.toString(), inputHash, () -> {
+            Map<String, String> values = "HITS".equalsIgnoreCase(mojo.phaseType)
+                    ? HitsPrompts.targetValues(mojo.getLog(), target.getLine(), mojo.onlyTargetLines, mojo.fullFM,
+                    project, target.getClassName(), target.getConstraintText(), target.getOffset(),
+                    target.getMethodSig(), mojo.prefixLayout())
+                    : Collections.emptyMap();
+            try (TargetValues.Binding ignored = TargetValues.bind(target.getClassName(), target.getMethodName(),
+                    target.toString(), values)) {
+                AdaptiveTests adaptive = mojo.adaptiveTests();
+                if (adaptive != null) {
+                    adaptive.run(configFor(1), target.getClassName(), target.getMethodName());
+                    return;
+                }
+                Config config = configFor(mojo.testNumber);
+                new Task(config, new RunnerImpl(config)).startMethodTask(target.getClassName(), target.getMethodName());
+            }
+        });
+    }
+
+    /**
+     * Generate tests for all target lines of one method at once: the HITS prompt annotates every line, and the
+     * lines the new tests hit are reported and appended to {tmpOutput}/line-coverage
+     * @param group the targets of one method, see {@link #groupByMethod}
+     * @return false when the group was skipped because the journal already holds it
+     * @throws Exception
+     */
+    public boolean runLines(List<MethodTarget> group) throws Exception {
+        MethodTarget first = group.get(0);
+        if (group.size() == 1) {
+            return runMethod(first);
+        }
+        List<Integer> lines = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        List<String> constraints = new ArrayList<>();
+        for (MethodTarget target : group) {
+            lines.add(target.getLine());
+            offsets.add(target.getOffset());
+            constraints.add(target.getConstraintText());
+        }
+        String id = first.getMethodId() + ":" + lines.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String inputHash = journal == null ? null : RunJournal.hash(mojo.inputFingerprint(),
+                classSource(first.getClassName()), id, String.valueOf(offsets), String.valueOf(constraints),
+                first.getMethodSig());
+        return journaled("lines", id, inputHash, () -> {
+            Map<String, String> values = HitsPrompts.lineBatchValues(mojo.onlyTargetLines, project,
+                    first.getClassName(), lines, offsets, constraints, first.getMethodSig(), mojo.prefixLayout());
+            try (TargetValues.Binding ignored = TargetValues.bind(first.getClassName(), first.getMethodName(), id, values)) {
+                Config config = configFor(mojo.testNumber);
+                long start = System.currentTimeMillis();
+                new Task(config, new RunnerImpl(config)).startMethodTask(first.getClassName(), first.getMethodName());
+                reportLines(config, first, lines, start);
+            }
+        });
+    }
+
+    /**
+     * Group targets by module and method, keeping the order of their first target
+     */
+    public static List<List<MethodTarget>> groupByMethod(List<MethodTarget> targets) {
+        Map<String, List<MethodTarget>> groups = new LinkedHashMap<>();
+        for (MethodTarget target : targets) {
+            String key = target.getModule() + "|" + target.getMethodId() + "|"
+                    + (target.getMethodSig() == null ? "" : target.getMethodSig());
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(target);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private void reportLines(Config config, MethodTarget target, List<Integer> lines, long start) throws IOException {
+        Path testOutput = config.getTestOutput();
+        if (testOutput == null || !MethodCoverage.available()) {
+            mojo.getLog().warn("Reporting the hit lines needs a JDK and a testOutput directory, skipped for "
+                    + target.getMethodId());
+            return;
+        }
+        List<Path> tests = AdaptiveTests.testsFor(testOutput, target.getClassName(), target.getMethodName(),
+                start);
+        MethodCoverage.Result result = new MethodCoverage(config.getClassPaths(),
+                config.getTmpOutput().resolve("coverage"), mojo.getLog(), COVERAGE_TIMEOUT_MILLIS)
+                .measure(target.getClassName(), target.getMethodName(), tests);
+        JsonArray hit = new JsonArray();
+        JsonArray missed = new JsonArray();
+        for (Integer line : lines) {
+            (result.getCovered().contains(line) ? hit : missed).add(line);
+        }
+        mojo.getLog().info(String.format("%s: %d tests hit %d of %d target lines, hit %s, missed %s",
+                target.getMethodId(), tests.size(), hit.size(), lines.size(), hit, missed));
+
+        JsonObject entry = new JsonObject();
+        entry.addProperty("method", target.getMethodId());
+        entry.addProperty("methodSig", target.getMethodSig());
+        entry.add("hit", hit);
+        entry.add("missed", missed);
+        entry.addProperty("tests", tests.size());
+        Path report = config.getTmpOutput().resolve("line-coverage")
+                .resolve(project.getGroupId() + "_" + project.getArtifactId() + ".jsonl");
+        synchronized (TargetRunner.class) {
+            Files.createDirectories(report.getParent());
+            Files.write(report, (entry + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Generate tests for one class
+     * @param className the fully qualified class name
+     * @return false when the class was skipped because the journal already holds it
+     * @throws Exception
+     */
+    public boolean runClass(String className) throws Exception {
+        String inputHash = journal == null ? null : RunJournal.hash(mojo.inputFingerprint(), classSource(className));
+        return journaled("class", className, inputHash,
+                () -> new Task(baseConfig, new RunnerImpl(baseConfig)).startClassTask(className));
+    }
+
+    private boolean journaled(String kind, String id, String inputHash, JobScheduler.Work work) throws Exception {
+        if (journal == null) {
+            work.run();
+            return true;
+        }
+        if (journal.isDone(kind, id, inputHash)) {
+            mojo.getLog().info("Skip " + kind + " " + id + ": already done in " + journal.getFile());
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            work.run();
+        } catch (Exception | Error e) {
+            journal.record(kind, id, inputHash, RunJournal.FAILED, System.currentTimeMillis() - start);
+            throw e;
+        }
+        journal.record(kind, id, inputHash, RunJournal.SUCCESS, System.currentTimeMillis() - start);
+        return true;
+    }
+
+    private String classSource(String className) {
+        return SourceIndex.of(project).content(className);
+    }
+
+    /**
+     * Every target shares the base Config unless the test count differs; HITS values are bound per target
+     */
+    private Config configFor(int testNumber) throws Exception {
+        return testNumber == mojo.testNumber ? baseConfig
+                : mojo.buildConfig(baseConfig.getProject(), mojo.promptDir(), testNumber);
+    }
+}
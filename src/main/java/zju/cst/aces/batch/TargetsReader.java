@@ -0,0 +1,221 @@
+package zju.cst.aces.batch;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads targets.csv and loc-method.meta the same way chatunitest.py does.
+ */
+public class TargetsReader {
+    private final String ctextColumn;
+    private final String offsetColumn;
+    private final String methodsigColumn;
+    private final String methodColumn;
+    private final Log log;
+
+    public TargetsReader(String ctextColumn, String offsetColumn, String methodsigColumn, String methodColumn, Log log) {
+        this.ctextColumn = ctextColumn;
+        this.offsetColumn = offsetColumn;
+        this.methodsigColumn = methodsigColumn;
+        this.methodColumn = methodColumn;
+        this.log = log;
+    }
+
+    /**
+     * Resolve every row of targets.csv to a method target
+     * @param targetsCsv the targets file
+     * @param locMethodMeta the loc-method.meta file, used when a row has no method column
+     * @return the targets in file order
+     * @throws IOException
+     */
+    public List<MethodTarget> read(Path targetsCsv, Path locMethodMeta) throws IOException {
+        Map<String, String> locMeta = readLocMethodMeta(locMethodMeta);
+        List<MethodTarget> targets = new ArrayList<>();
+        List<Map<String, String>> rows;
+        try (Reader reader = Files.newBufferedReader(targetsCsv, StandardCharsets.UTF_8)) {
+            rows = parseCsv(reader);
+        }
+        for (Map<String, String> row : rows) {
+            String file = column(row, "file");
+            String line = column(row, "line");
+            String module = column(row, "module");
+            String constraintText = column(row, ctextColumn);
+            String offsetRaw = column(row, offsetColumn);
+            String methodsig = column(row, methodsigColumn);
+            String methodFull = column(row, methodColumn);
+
+            Integer offset = null;
+            if (!offsetRaw.isEmpty()) {
+                try {
+                    // whatever offset value we get from targets.csv, add 1
+                    offset = Integer.parseInt(offsetRaw) + 1;
+                } catch (NumberFormatException e) {
+                    log.warn("Bad offset value '" + offsetRaw + "' for " + file + ":" + line + " (expected int). Ignoring.");
+                }
+            }
+
+            int lineNumber;
+            try {
+                lineNumber = Integer.parseInt(line);
+            } catch (NumberFormatException e) {
+                log.warn("Bad line value '" + line + "' for " + file + ". Skipping.");
+                continue;
+            }
+
+            // Prefer method column if present; otherwise map via loc-method.meta
+            String mid = !methodFull.isEmpty() ? methodFull : locMeta.getOrDefault(normalizeTargetFile(file) + ":" + line, "");
+            if (mid.isEmpty()) {
+                log.warn("No method found for " + file + ":" + line);
+                continue;
+            }
+
+            String cls;
+            String mname;
+            if (mid.contains("#")) {
+                cls = mid.substring(0, mid.indexOf('#'));
+                mname = mid.substring(mid.indexOf('#') + 1);
+            } else if (mid.contains(".")) {
+                cls = mid.substring(0, mid.lastIndexOf('.'));
+                mname = mid.substring(mid.lastIndexOf('.') + 1);
+            } else {
+                cls = mid;
+                mname = "";
+            }
+            targets.add(new MethodTarget(module, file, lineNumber, cls, mname,
+                    constraintText.isEmpty() ? null : constraintText, offset, methodsig.isEmpty() ? null : methodsig));
+        }
+        log.info("Mapped " + targets.size() + " targets from " + targetsCsv);
+        return targets;
+    }
+
+    /**
+     * Read loc-method.meta lines of the form {@code <file>:<line>,<methodId>}
+     */
+    public Map<String, String> readLocMethodMeta(Path locMethodMeta) throws IOException {
+        Map<String, String> locMeta = new HashMap<>();
+        if (locMethodMeta == null || !Files.exists(locMethodMeta)) {
+            log.warn("loc-method.meta not found: " + locMethodMeta);
+            return locMeta;
+        }
+        for (String ln : Files.readAllLines(locMethodMeta, StandardCharsets.UTF_8)) {
+            ln = ln.trim();
+            if (ln.isEmpty() || ln.startsWith("#") || !ln.contains(",")) {
+                continue;
+            }
+            String left = ln.substring(0, ln.indexOf(',')).trim();
+            String mid = ln.substring(ln.indexOf(',') + 1).trim();
+            if (!left.isEmpty() && !mid.isEmpty()) {
+                locMeta.put(left, mid);
+            }
+        }
+        log.info("Loaded " + locMeta.size() + " mappings from " + locMethodMeta);
+        return locMeta;
+    }
+
+    /**
+     * loc-method.meta keys look like src/main/java/org/foo/Bar.java:123, strip any leading "./"
+     */
+    public static String normalizeTargetFile(String path) {
+        String s = path.trim();
+        int i = 0;
+        while (i < s.length() && (s.charAt(i) == '.' || s.charAt(i) == '/')) {
+            i++;
+        }
+        return s.substring(i);
+    }
+
+    private static String column(Map<String, String> row, String name) {
+        if (name == null) {
+            return "";
+        }
+        String value = row.get(name);
+        return value == null ? "" : value.trim();
+    }
+
+    /**
+     * Minimal RFC 4180 reader: header row, quoted fields, doubled quotes and newlines inside quotes.
+     */
+    static List<Map<String, String>> parseCsv(Reader in) throws IOException {
+        Reader reader = in.markSupported() ? in : new BufferedReader(in);
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean pending = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            char ch = (char) c;
+            if (quoted) {
+                if (ch == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next == -1) {
+                            break;
+                        }
+                        reader.reset();
+                    }
+                } else {
+                    field.append(ch);
+                }
+                continue;
+            }
+            if (ch == '"') {
+                quoted = true;
+                pending = true;
+            } else if (ch == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+                pending = true;
+            } else if (ch == '\n') {
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<>();
+                pending = false;
+            } else if (ch != '\r') {
+                field.append(ch);
+                pending = true;
+            }
+        }
+        if (pending || field.length() > 0) {
+            record.add(field.toString());
+            records.add(record);
+        }
+
+        List<Map<String, String>> rows = new ArrayList<>();
+        if (records.isEmpty()) {
+            return rows;
+        }
+        List<String> header = records.get(0);
+        if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) {
+            header.set(0, header.get(0).substring(1));
+        }
+        for (int r = 1; r < records.size(); r++) {
+            List<String> values = records.get(r);
+            if (values.size() == 1 && values.get(0).trim().isEmpty()) {
+                continue;
+            }
+            Map<String, String> row = new LinkedHashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                row.put(header.get(i).trim(), i < values.size() ? values.get(i) : "");
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,102 @@
+package zju.cst.aces.batch;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.ModelType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts prompt tokens with the tokenizer of the configured model, falling back to cl100k_base
+ * for models jtokkit does not know (local models, newer OpenAI models).
+ * Counters are shared per model, and counts of longer texts are memoized by content hash across threads,
+ * since the same class bodies and dependency snippets are counted for every method and round.
+ */
+public class TokenCounter {
+    private static final EncodingRegistry REGISTRY = Encodings.newDefaultEncodingRegistry();
+    private static final ConcurrentMap<String, TokenCounter> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Integer> COUNTS = new ConcurrentHashMap<>();
+    /** Shorter texts are cheaper to tokenize than to hash */
+    private static final int MIN_MEMO_LENGTH = 256;
+    private static final int MAX_MEMO_ENTRIES = 200_000;
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private final Encoding encoding;
+
+    private TokenCounter(Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * @param model the model name
+     * @return the counter of the model, created once per JVM
+     */
+    public static TokenCounter forModel(String model) {
+        return COUNTERS.computeIfAbsent(String.valueOf(model), k -> new TokenCounter(encodingFor(model)));
+    }
+
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (text.length() < MIN_MEMO_LENGTH) {
+            return encoding.countTokens(text);
+        }
+        String key = encoding.getName() + ":" + sha256(text);
+        Integer cached = COUNTS.get(key);
+        if (cached != null) {
+            HITS.incrementAndGet();
+            return cached;
+        }
+        MISSES.incrementAndGet();
+        int tokens = encoding.countTokens(text);
+        if (COUNTS.size() >= MAX_MEMO_ENTRIES) {
+            // a crude bound; a run rarely gets here and recounting is cheap compared to holding every prompt
+            COUNTS.clear();
+        }
+        COUNTS.put(key, tokens);
+        return tokens;
+    }
+
+    /**
+     * @return the memoized counts of the JVM as "hits/lookups (rate)", or null before the first lookup
+     */
+    public static String summary() {
+        long hits = HITS.get();
+        long lookups = hits + MISSES.get();
+        if (lookups == 0) {
+            return null;
+        }
+        return String.format("Token counts: %d/%d memoized (%.0f%%)", hits, lookups, 100.0 * hits / lookups);
+    }
+
+    static Encoding encodingFor(String model) {
+        ModelType best = null;
+        if (model != null) {
+            for (ModelType type : ModelType.values()) {
+                if (model.startsWith(type.getName()) && (best == null || type.getName().length() > best.getName().length())) {
+                    best = type;
+                }
+            }
+        }
+        return best != null ? REGISTRY.getEncodingForModel(best) : REGISTRY.getEncoding(EncodingType.CL100K_BASE);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package zju.cst.aces.bench;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import zju.cst.aces.http.ChatRequests;
+import zju.cst.aces.http.PromptKind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * OpenAI-compatible stand-in for the chat completions endpoint on loopback. It answers every call with a
+ * canned or templated response after a configurable latency and can inject 429s, so the plugin's own overhead
+ * can be measured without network or model time.
+ */
+public class MockLlmServer implements AutoCloseable {
+    public enum Phase { GEN, SLICE, REPAIR }
+
+    /** the prompt kind of a request, only ever sent to this mock, see {@link #kindHeader()} */
+    public static final String KIND_HEADER = "X-Chatunitest-Prompt";
+
+    private static final Pattern TEST_CLASS = Pattern.compile("Name the test class as (\\w+)");
+    private static final Pattern CLASS_NAME = Pattern.compile("focal class[^\\w]*(\\w+)");
+    private static final Pattern REPAIR_WORDS = Pattern.compile("(?i)\\b(fix|repair)\\b");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final double tooManyRequestsRate;
+    private final String cannedResponse;
+    private final Map<Phase, List<Long>> serviceTimes = new EnumMap<>(Phase.class);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong unmarked = new AtomicLong();
+    private final AtomicLong mismatched = new AtomicLong();
+
+    /**
+     * @param latencyMillis how long every answer takes, jittered by +-25%
+     * @param tooManyRequestsRate share of calls answered with 429 and Retry-After: 1
+     * @param cannedResponse the assistant content to return, ${test_class} is replaced; null for the built-in ones
+     */
+    public MockLlmServer(long latencyMillis, double tooManyRequestsRate, String cannedResponse) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.tooManyRequestsRate = tooManyRequestsRate;
+        this.cannedResponse = cannedResponse;
+        for (Phase phase : Phase.values()) {
+            serviceTimes.put(phase, Collections.synchronizedList(new ArrayList<>()));
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "mock-llm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return an interceptor that sends the prompt kind of each request to the mock as a header; it has to be
+     * the last one of the client, other endpoints must never see the header
+     */
+    public static Interceptor kindHeader() {
+        return chain -> {
+            Request request = chain.request();
+            PromptKind kind = ChatRequests.kind(request);
+            return chain.proceed(kind == PromptKind.UNKNOWN ? request
+                    : request.newBuilder().header(KIND_HEADER, kind.name()).build());
+        };
+    }
+
+    /**
+     * @return how many requests came without the template kind header
+     */
+    public long getUnmarked() {
+        return unmarked.get();
+    }
+
+    /**
+     * @return how many requests were sent with a kind other than the answer their prompt asks for
+     */
+    public long getMismatched() {
+        return mismatched.get();
+    }
+
+    /**
+     * @return the time from request to answer per phase, in milliseconds
+     */
+    public Map<Phase, List<Long>> getServiceTimes() {
+        return serviceTimes;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.currentTimeMillis();
+        requests.incrementAndGet();
+        try {
+            String prompt = "";
+            String model = "mock";
+            JsonElement json = JsonParser.parseString(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8));
+            if (json != null && json.isJsonObject()) {
+                JsonObject body = json.getAsJsonObject();
+                if (body.has("model")) {
+                    model = body.get("model").getAsString();
+                }
+                prompt = ChatRequests.promptText(body);
+            }
+            if (tooManyRequestsRate > 0 && ThreadLocalRandom.current().nextDouble() < tooManyRequestsRate) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, 429, "{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"requests\"}}");
+                return;
+            }
+            long jitter = latencyMillis / 4;
+            long sleep = latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+            Thread.sleep(Math.max(0, sleep));
+
+            String kind = exchange.getRequestHeaders().getFirst(KIND_HEADER);
+            Phase phase = phaseOf(PromptKind.parse(kind));
+            if (kind == null) {
+                unmarked.incrementAndGet();
+            } else if (phase != askedFor(prompt)) {
+                mismatched.incrementAndGet();
+            }
+            String content = content(phase, prompt);
+            JsonObject usage = new JsonObject();
+            usage.addProperty("prompt_tokens", prompt.length() / 4);
+            usage.addProperty("completion_tokens", content.length() / 4);
+            usage.addProperty("total_tokens", (prompt.length() + content.length()) / 4);
+            send(exchange, 200, ChatRequests.completion("mock-" + requests.get(), model, content, "stop", usage).toString());
+            serviceTimes.get(phase).add(System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "{\"error\":{\"message\":\"shutting down\"}}");
+        } catch (RuntimeException e) {
+            send(exchange, 400, "{\"error\":{\"message\":\"bad request\"}}");
+        }
+    }
+
+    /**
+     * Route on the template kind the plugin sent along, the same one its interceptors act on
+     */
+    static Phase phaseOf(PromptKind kind) {
+        if (kind == PromptKind.REPAIR) {
+            return Phase.REPAIR;
+        }
+        if (kind == PromptKind.SLICE) {
+            return Phase.SLICE;
+        }
+        return Phase.GEN;
+    }
+
+    /**
+     * The answer the prompt text asks for, judged apart from the template kind so the benchmark catches requests
+     * the plugin sends with the wrong kind
+     */
+    static Phase askedFor(String prompt) {
+        if (prompt.contains("JSON format")) {
+            return Phase.SLICE;
+        }
+        if (REPAIR_WORDS.matcher(prompt).find()) {
+            return Phase.REPAIR;
+        }
+        return Phase.GEN;
+    }
+
+    private String content(Phase phase, String prompt) {
+        String testClass = testClass(prompt);
+        if (cannedResponse != null) {
+            return cannedResponse.replace("${test_class}", testClass);
+        }
+        if (phase == Phase.SLICE) {
+            return "```json\n{\"summarization\": \"mock\", \"invoked_outside_vars\": [], \"invoked_outside_methods\": [],"
+                    + " \"steps\": [{\"desp\": \"whole method\", \"code\": \"\"}]}\n```";
+        }
+        return "```java\nimport org.junit.Test;\nimport static org.junit.Assert.*;\n\npublic class " + testClass
+                + " {\n    @Test\n    public void test() {\n        assertTrue(true);\n    }\n}\n```";
+    }
+
+    private static String testClass(String prompt) {
+        Matcher m = TEST_CLASS.matcher(prompt);
+        if (m.find()) {
+            return m.group(1);
+        }
+        m = CLASS_NAME.matcher(prompt);
+        return m.find() ? m.group(1) + "_Test" : "Mock_Test";
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,207 @@
+package zju.cst.aces.hits;
+
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+import zju.cst.aces.batch.TokenCounter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the dependencies of a prompt that fit the maxPromptTokens budget, most relevant first, instead of letting
+ * the prompt be truncated. Called from the prompt templates:
+ * <pre>
+ * &lt;#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, m_deps, full_fm, method_name)&gt;
+ * &lt;#list context.c_deps as key, value&gt;...
+ * </pre>
+ * A dependency is more relevant the more often the focal method (then the focal class) mentions it, and a method
+ * dependency counts double since the focal code calls it directly. Dependencies the focal class never names come
+ * from deeper levels of dependencyDepth and go last. Without a budget the maps are returned unchanged.
+ * <p>
+ * A template that places the class and the method dependencies apart splits one budget between two calls: the
+ * result carries the tokens still {@code remaining}, which the second call takes as its budget.
+ * <pre>
+ * &lt;#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, {}, full_fm)&gt;
+ * &lt;#assign method_context = "zju.cst.aces.hits.ContextSelector"?new()({}, m_deps, full_fm, method_name, context.remaining)&gt;
+ * </pre>
+ */
+public class ContextSelector implements TemplateMethodModelEx {
+    /** Tokens left for the instructions of the template and the per-target values */
+    static final int INSTRUCTION_RESERVE = 1024;
+
+    private static volatile int maxPromptTokens = -1;
+    private static volatile String model;
+
+    /**
+     * @param maxPromptTokens the prompt budget, 0 or less for none
+     * @param model the model whose tokenizer measures the dependencies
+     */
+    public static void configure(int maxPromptTokens, String model) {
+        ContextSelector.maxPromptTokens = maxPromptTokens;
+        ContextSelector.model = model;
+    }
+
+    @Override
+    public Object exec(List arguments) throws TemplateModelException {
+        if (arguments.size() < 3) {
+            throw new TemplateModelException(
+                    "ContextSelector expects (c_deps, m_deps, full_fm[, method_name[, remaining]])");
+        }
+        Map<String, Object> context = new LinkedHashMap<>();
+        int budget = maxPromptTokens;
+        if (budget <= 0) {
+            context.put("c_deps", arguments.get(0));
+            context.put("m_deps", arguments.get(1));
+            context.put("remaining", Integer.MAX_VALUE);
+            return context;
+        }
+        Map<String, String> classDeps = asMap(arguments.get(0));
+        Map<String, String> methodDeps = asMap(arguments.get(1));
+        String classText = asString(arguments.get(2));
+        String methodName = arguments.size() > 3 ? asString(arguments.get(3)) : "";
+        TokenCounter counter = TokenCounter.forModel(model);
+        // the reserve and the focal class were already taken out of a remaining budget
+        int available = arguments.size() > 4 ? asInt(arguments.get(4))
+                : budget - INSTRUCTION_RESERVE - counter.count(classText);
+        String methodText = focalMethod(classText, methodName);
+
+        List<Candidate> candidates = new ArrayList<>();
+        int order = 0;
+        for (Map.Entry<String, String> dep : classDeps.entrySet()) {
+            candidates.add(new Candidate(false, dep.getKey(), order++,
+                    relevance(dep.getKey(), classText, methodText), counter.count(dep.getValue())));
+        }
+        for (Map.Entry<String, String> dep : methodDeps.entrySet()) {
+            candidates.add(new Candidate(true, dep.getKey(), order++,
+                    2 * relevance(dep.getKey(), classText, methodText), counter.count(dep.getValue())));
+        }
+        // greedy by relevance per token, discovery order breaks ties
+        candidates.sort(Comparator.comparingDouble(Candidate::density).reversed()
+                .thenComparingInt(c -> c.order));
+        List<Candidate> kept = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.tokens <= available) {
+                available -= candidate.tokens;
+                kept.add(candidate);
+            }
+        }
+        context.put("c_deps", keep(classDeps, kept, false));
+        context.put("m_deps", keep(methodDeps, kept, true));
+        context.put("remaining", Math.max(0, available));
+        return context;
+    }
+
+    static double relevance(String dependency, String classText, String methodText) {
+        String name = simpleName(dependency);
+        return 3 * occurrences(methodText, name) + occurrences(classText, name);
+    }
+
+    /**
+     * @return the text from the first declaration of the method to the end of its body, or "" when not found
+     */
+    static String focalMethod(String classText, String methodName) {
+        if (methodName == null || methodName.isEmpty()) {
+            return "";
+        }
+        Matcher matcher = Pattern.compile("\\b" + Pattern.quote(methodName) + "\\s*\\([^;{]*\\)[^;{]*\\{").matcher(classText);
+        if (!matcher.find()) {
+            return "";
+        }
+        int depth = 0;
+        for (int i = matcher.end() - 1; i < classText.length(); i++) {
+            char c = classText.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return classText.substring(matcher.start(), i + 1);
+            }
+        }
+        return classText.substring(matcher.start());
+    }
+
+    private static int occurrences(String text, String name) {
+        if (text.isEmpty() || name.isEmpty()) {
+            return 0;
+        }
+        Matcher matcher = Pattern.compile("\\b" + Pattern.quote(name) + "\\b").matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static String simpleName(String dependency) {
+        String name = dependency.replaceAll("<.*", "").trim();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(dot + 1);
+    }
+
+    private static Map<String, String> keep(Map<String, String> deps, List<Candidate> kept, boolean method) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, String> dep : deps.entrySet()) {
+            for (Candidate candidate : kept) {
+                if (candidate.method == method && candidate.key.equals(dep.getKey())) {
+                    result.put(dep.getKey(), dep.getValue());
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, String> asMap(Object argument) throws TemplateModelException {
+        Object value = argument instanceof TemplateModel ? DeepUnwrap.unwrap((TemplateModel) argument) : argument;
+        Map<String, String> map = new LinkedHashMap<>();
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), entry.getValue() == null ? "" : String.valueOf(entry.getValue()));
+            }
+        }
+        return map;
+    }
+
+    private static String asString(Object argument) throws TemplateModelException {
+        Object value = argument instanceof TemplateModel ? DeepUnwrap.unwrap((TemplateModel) argument) : argument;
+        return value == null ? "" : String.valueOf(value);
+    }
+
+    private static int asInt(Object argument) throws TemplateModelException {
+        Object value = argument instanceof TemplateModel ? DeepUnwrap.unwrap((TemplateModel) argument) : argument;
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        try {
+            return Integer.parseInt(String.valueOf(value).trim());
+        } catch (NumberFormatException e) {
+            throw new TemplateModelException("ContextSelector expects a number of remaining tokens, got " + value);
+        }
+    }
+
+    private static class Candidate {
+        final boolean method;
+        final String key;
+        final int order;
+        final double relevance;
+        final int tokens;
+
+        Candidate(boolean method, String key, int order, double relevance, int tokens) {
+            this.method = method;
+            this.key = key;
+            this.order = order;
+            this.relevance = relevance;
+            this.tokens = tokens;
+        }
+
+        double density() {
+            return relevance / Math.max(1, tokens);
+        }
+    }
+}
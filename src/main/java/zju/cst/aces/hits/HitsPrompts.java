@@ -0,0 +1,530 @@
+package zju.cst.aces.hits;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import zju.cst.aces.batch.SourceIndex;
+import zju.cst.aces.http.PromptKind;
+import zju.cst.aces.http.PromptMarkers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders the HITS prompts. The templates are loaded once per JVM into a shared prompt directory in which every
+ * per-target placeholder reads from {@link TargetValues}, so the values of a target are bound in memory instead of
+ * being written into a copy of the templates. Shared by the class, method and targets goals. The other phases use
+ * the same directory, so every template carries the {@link PromptKind} marker the interceptors act on.
+ */
+public class HitsPrompts {
+
+    public static final List<String> PROMPT_FILES = Arrays.asList(
+            "hits_gen.ftl",
+            "hits_gen_slice.ftl",
+            "hits_repair.ftl",
+            "hits_system_gen.ftl",
+            "hits_system_repair.ftl",
+            "initial.ftl",
+            "initial_system.ftl",
+            "extra.ftl",
+            "extra_system.ftl",
+            "repair.ftl",
+            "chattester_initial.ftl",
+            "chattester_extra.ftl",
+            "chattester_repair.ftl",
+            "testspark_initial.ftl",
+            "testspark_repair.ftl",
+            "initial_symprompt.ftl",
+            "initial_symprompt_system.ftl",
+            "initial_telpa.ftl",
+            "initial_testpilot.ftl",
+            "initial_mutation.ftl",
+            "coverage.ftl"
+    );
+
+    private static final List<String> INJECTED_FILES = Arrays.asList(
+            "hits_gen.ftl",
+            "hits_gen_slice.ftl",
+            "hits_repair.ftl",
+            "hits_system_repair.ftl"
+    );
+
+    /** The per-target placeholders, read from the bound values and otherwise from the data model of the core */
+    static final List<String> TARGET_KEYS = Arrays.asList(
+            "lines_to_test", "only_target_lines", "full_fm", "target_method", "constraint_text", "offset", "methodsig"
+    );
+
+    private static final Map<String, Map<String, byte[]>> TEMPLATE_SOURCES = new ConcurrentHashMap<>();
+    private static final Map<String, File> PROMPT_DIRS = new ConcurrentHashMap<>();
+
+    /**
+     * @param srcPromptDir custom prompts, or null for the bundled ones
+     * @param prefixLayout use the prefix-stable prompts of prompt-prefix/
+     * @return the JVM-wide prompt directory of these templates, written on first use and deleted on exit
+     */
+    public static File promptDir(File srcPromptDir, Log log, boolean prefixLayout) throws IOException {
+        String resourceDir = prefixLayout ? "prompt-prefix/" : "prompt/";
+        Map<String, byte[]> sources = templateSources(srcPromptDir, resourceDir);
+        String key = (srcPromptDir != null && srcPromptDir.isDirectory() ? srcPromptDir.getAbsolutePath() : "classpath:")
+                + "|" + resourceDir;
+        try {
+            return PROMPT_DIRS.computeIfAbsent(key, k -> {
+                try {
+                    File dir = writePromptDir(sources);
+                    log.info("Prompt path >>> " + dir.getAbsolutePath());
+                    return dir;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static File writePromptDir(Map<String, byte[]> sources) throws IOException {
+        Path dir = Files.createTempDirectory("chatunitest-prompts-");
+        for (Map.Entry<String, byte[]> source : sources.entrySet()) {
+            Path out = dir.resolve(source.getKey());
+            Files.createDirectories(out.getParent());
+            String template = new String(source.getValue(), StandardCharsets.UTF_8);
+            PromptKind kind = PromptKind.forTemplate(source.getKey(), template);
+            if (INJECTED_FILES.contains(source.getKey())) {
+                // the request names its target, so interceptors find the values it was rendered with
+                template = bindTargetValues(PromptMarkers.mark(template, kind,
+                        "${hits." + TargetValues.TARGET_ID + "!\"\"}"));
+            } else {
+                template = PromptMarkers.mark(template, kind, null);
+            }
+            Files.write(out, template.getBytes(StandardCharsets.UTF_8));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir)));
+        return dir.toFile();
+    }
+
+    /**
+     * Point every per-target placeholder of a template at the bound values. A value that is not bound falls back
+     * to the variable of the same name in the data model of the core, as the unreplaced placeholder used to.
+     */
+    static String bindTargetValues(String template) {
+        String bound = template;
+        for (String key : TARGET_KEYS) {
+            bound = bound.replace("${" + key + "}", "${hits." + key + "!" + key + "}");
+        }
+        return "<#assign hits = \"" + TargetValues.class.getName() + "\"?new()(class_name!\"\", method_name!\"\")>" + bound;
+    }
+
+    /**
+     * The per-target values of the HITS prompts
+     * @return the values by placeholder name; unset ones are left out
+     */
+    public static Map<String, String> targetValues(Log log,
+                                                   int lines,
+                                                   boolean onlyTargetLines,
+                                                   boolean fullFM,
+                                                   MavenProject project,
+                                                   String selectClass,
+                                                   String constraintText,
+                                                   Integer offset,
+                                                   String methodSig,
+                                                   boolean prefixLayout) {
+        Map<String, String> values = new HashMap<>();
+        String codeLine = readLineOfClass(project, selectClass, lines);
+        values.put("lines_to_test", codeLine);
+        values.put("only_target_lines", String.valueOf(onlyTargetLines));
+        String fullCode = readWholeClass(project, selectClass);
+        String focalMethod = fullCode == null || methodSig == null ? null : methodText(fullCode, methodSig);
+        if (focalMethod != null) {
+            // not a placeholder: the slice cache keys on the plain method
+            values.put("focal_method", focalMethod);
+        }
+
+        if (prefixLayout) {
+            values.put("full_fm", fullCode == null ? "" : fullCode);
+            String targetMethod = fullCode == null || methodSig == null || offset == null
+                    ? null : annotatedMethodAtOffset(fullCode, methodSig, offset);
+            values.put("target_method", targetMethod == null ? codeLine : targetMethod);
+            // the prefix prompts always reference these, so fill them even when unset
+            values.put("constraint_text", constraintText == null ? "" : constraintText);
+            values.put("offset", offset == null ? "" : offset.toString());
+            values.put("methodsig", methodSig == null ? "" : methodSig);
+        } else {
+            String annotated = fullCode;
+            if (fullCode != null && !fullCode.isEmpty() && methodSig != null && offset != null) {
+                annotated = annotateMethodAtOffset(fullCode, methodSig, offset);
+            }
+            values.put("full_fm", annotated == null ? "" : annotated);
+            if (constraintText != null) {
+                values.put("constraint_text", constraintText);
+            }
+            if (offset != null) {
+                values.put("offset", offset.toString());
+            }
+            if (methodSig != null) {
+                values.put("methodsig", methodSig);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The HITS prompt values for several target lines of one method: every line is annotated in the method and
+     * listed in ${lines_to_test}, ${offset} and ${constraint_text}
+     * @param lines the class line numbers of the targets
+     * @param offsets the offsets of the targets in the method, null where unknown
+     * @param constraintTexts the constraint texts of the targets, null where unset
+     * @return the values by placeholder name
+     */
+    public static Map<String, String> lineBatchValues(boolean onlyTargetLines,
+                                                      MavenProject project,
+                                                      String selectClass,
+                                                      List<Integer> lines,
+                                                      List<Integer> offsets,
+                                                      List<String> constraintTexts,
+                                                      String methodSig,
+                                                      boolean prefixLayout) {
+        Map<String, String> values = new HashMap<>();
+        List<String> codeLines = new java.util.ArrayList<>();
+        List<String> constraints = new java.util.ArrayList<>();
+        List<Integer> knownOffsets = new java.util.ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            codeLines.add("line " + lines.get(i) + ": " + readLineOfClass(project, selectClass, lines.get(i)).trim());
+            if (constraintTexts.get(i) != null) {
+                constraints.add("line " + lines.get(i) + ": " + constraintTexts.get(i));
+            }
+            if (offsets.get(i) != null && offsets.get(i) > 0) {
+                knownOffsets.add(offsets.get(i));
+            }
+        }
+        values.put("lines_to_test", String.join("\n", codeLines));
+        values.put("only_target_lines", String.valueOf(onlyTargetLines));
+        values.put("constraint_text", String.join("\n", constraints));
+        values.put("offset", knownOffsets.stream().map(String::valueOf).collect(Collectors.joining(", ")));
+        values.put("methodsig", methodSig == null ? "" : methodSig);
+
+        String fullCode = readWholeClass(project, selectClass);
+        fullCode = fullCode == null ? "" : fullCode;
+        String focalMethod = methodSig == null ? null : methodText(fullCode, methodSig);
+        if (focalMethod != null) {
+            values.put("focal_method", focalMethod);
+        }
+        String annotatedMethod = methodSig == null ? null : annotatedMethodAtOffsets(fullCode, methodSig, knownOffsets);
+        if (prefixLayout) {
+            values.put("full_fm", fullCode);
+            values.put("target_method", annotatedMethod == null ? String.join("\n", codeLines) : annotatedMethod);
+        } else {
+            values.put("full_fm", methodSig == null ? fullCode : annotateMethodAtOffsets(fullCode, methodSig, knownOffsets));
+        }
+        return values;
+    }
+
+    /**
+     * Prompt sources are read once per JVM and keyed by their directory, so a long-running
+     * process (targets, serve) does not hit the disk again for every target.
+     */
+    static Map<String, byte[]> templateSources(File srcPromptDir, String resourceDir) throws IOException {
+        boolean custom = srcPromptDir != null && srcPromptDir.isDirectory();
+        String key = custom ? srcPromptDir.getAbsolutePath() : "classpath:" + resourceDir;
+        Map<String, byte[]> sources = TEMPLATE_SOURCES.get(key);
+        if (sources != null) {
+            return sources;
+        }
+        sources = new LinkedHashMap<>();
+        if (custom) {
+            readDir(srcPromptDir.toPath(), sources);
+        } else {
+            for (String name : PROMPT_FILES) {
+                // prompt-prefix/ only holds the HITS templates, the others come from prompt/
+                InputStream resource = HitsPrompts.class.getClassLoader().getResourceAsStream(resourceDir + name);
+                if (resource == null) {
+                    resource = HitsPrompts.class.getClassLoader().getResourceAsStream("prompt/" + name);
+                }
+                try (InputStream in = resource) {
+                    if (in == null) continue;
+                    sources.put(name, readAll(in));
+                }
+            }
+        }
+        sources = Collections.unmodifiableMap(sources);
+        Map<String, byte[]> previous = TEMPLATE_SOURCES.putIfAbsent(key, sources);
+        return previous == null ? sources : previous;
+    }
+
+    private static void delete(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException ignored) {
+            // the JVM is exiting, a leftover temp dir is harmless
+        }
+    }
+
+    private static void readDir(Path src, Map<String, byte[]> sources) throws IOException {
+        if (!Files.exists(src)) return;
+        try (Stream<Path> files = Files.walk(src)) {
+            files.filter(Files::isRegularFile).forEach(p -> {
+                try {
+                    sources.put(src.relativize(p).toString(), Files.readAllBytes(p));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    // --- helper: read the exact source line of a fully-qualified class ---
+    public static String readLineOfClass(MavenProject project, String fqcn, int line) {
+        if (fqcn == null || line < 1) return "";
+        return SourceIndex.of(project).line(fqcn, line);
+    }
+
+    public static String readWholeClass(MavenProject project, String fqcn) {
+        if (fqcn == null) return "";
+        return SourceIndex.of(project).content(fqcn);
+    }
+
+    private static class ParsedSig {
+        final String name;
+        final List<String> paramTypes; // normalized simple names
+        ParsedSig(String name, List<String> paramTypes) {
+            this.name = name;
+            this.paramTypes = paramTypes;
+        }
+    }
+
+    private static ParsedSig parseMethodSig(String methodsig) {
+        // methodsig: query(MappedStatement,Object,RowBounds,...)
+        int lp = methodsig.indexOf('(');
+        int rp = methodsig.lastIndexOf(')');
+        if (lp < 0 || rp < lp) throw new IllegalArgumentException("Bad methodsig: " + methodsig);
+
+        String name = methodsig.substring(0, lp).trim();
+        String inside = methodsig.substring(lp + 1, rp).trim();
+
+        List<String> types = new java.util.ArrayList<>();
+        if (!inside.isEmpty()) {
+            for (String t : inside.split(",")) {
+                types.add(normalizeType(t));
+            }
+        }
+        return new ParsedSig(name, types);
+    }
+
+    static String normalizeType(String t) {
+        // normalize things like "java.lang.String", "List<String>", "@Ann final Foo...", "Foo..." varargs
+        t = t.trim();
+        t = t.replace("...", "[]"); // treat varargs as array
+        // remove annotations and modifiers words often seen in params
+        t = t.replaceAll("@\\w+(\\([^)]*\\))?\\s*", "");
+        t = t.replaceAll("\\bfinal\\b\\s*", "");
+        // strip generics, innermost first so nested type arguments go too
+        String stripped;
+        while (!(stripped = t.replaceAll("<[^<>]*>", "")).equals(t)) {
+            t = stripped;
+        }
+        t = t.trim();
+        // take simple name
+        int lastDot = t.lastIndexOf('.');
+        if (lastDot >= 0) t = t.substring(lastDot + 1);
+        return t.trim();
+    }
+
+    public static String annotateMethodAtOffset(String fullCode, String methodsig, Integer offset) {
+        if (fullCode == null || methodsig == null || offset == null) return fullCode;
+        if (offset <= 0) return fullCode;
+        return annotateMethodAtOffsets(fullCode, methodsig, Collections.singletonList(offset));
+    }
+
+    /**
+     * Mark every given line of the method, for prompts that target several lines at once
+     */
+    public static String annotateMethodAtOffsets(String fullCode, String methodsig, List<Integer> offsets) {
+        if (fullCode == null || methodsig == null || offsets.isEmpty()) return fullCode;
+
+        int[] range = locateMethod(fullCode, methodsig);
+        if (range == null) return fullCode;
+
+        String methodText = fullCode.substring(range[0], range[2] + 1);
+        String annotated = insertCommentInsideMethod(methodText, range[1] - range[0], offsets);
+
+        // Replace in fullCode (first matching exact method)
+        return fullCode.substring(0, range[0]) + annotated + fullCode.substring(range[2] + 1);
+    }
+
+    /**
+     * Same annotation as {@link #annotateMethodAtOffset}, but only the method text is returned
+     * @return the annotated method, or null when the method is not found
+     */
+    public static String annotatedMethodAtOffset(String fullCode, String methodsig, Integer offset) {
+        if (fullCode == null || methodsig == null || offset == null || offset <= 0) return null;
+        return annotatedMethodAtOffsets(fullCode, methodsig, Collections.singletonList(offset));
+    }
+
+    /**
+     * Same annotation as {@link #annotateMethodAtOffsets}, but only the method text is returned
+     * @return the annotated method, or null when the method is not found
+     */
+    public static String annotatedMethodAtOffsets(String fullCode, String methodsig, List<Integer> offsets) {
+        if (fullCode == null || methodsig == null) return null;
+        int[] range = locateMethod(fullCode, methodsig);
+        if (range == null) return null;
+        return insertCommentInsideMethod(fullCode.substring(range[0], range[2] + 1), range[1] - range[0], offsets);
+    }
+
+    /**
+     * @return the text of the first method matching methodsig, or null when it is not found
+     */
+    public static String methodText(String fullCode, String methodsig) {
+        int[] range;
+        try {
+            range = locateMethod(fullCode, methodsig);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return range == null ? null : fullCode.substring(range[0], range[2] + 1);
+    }
+
+    /**
+     * Looks the method up in the {@link MethodIndex} of the class, and searches the text only when the class
+     * does not parse or the signature is not indexed
+     * @return start of the declaration, index of the opening and of the closing brace of the body of the first
+     * method matching methodsig, or null
+     */
+    private static int[] locateMethod(String fullCode, String methodsig) {
+        ParsedSig sig = parseMethodSig(methodsig);
+        MethodIndex index = MethodIndex.of(fullCode);
+        int[] indexed = index.isParsed() ? index.locate(sig.name, sig.paramTypes) : null;
+        if (indexed != null) {
+            return indexed;
+        }
+
+        // Find candidate method declarations with same name.
+        // This is intentionally permissive; we’ll verify params afterwards.
+        java.util.regex.Pattern p = java.util.regex.Pattern.compile(
+                "(?s)(?:public|protected|private|static|final|synchronized|native|abstract|\\s)+" +
+                        ".*?\\b" + java.util.regex.Pattern.quote(sig.name) + "\\s*\\(([^)]*)\\)\\s*(?:throws\\s+[^\\{]+)?\\{"
+        );
+        java.util.regex.Matcher m = p.matcher(fullCode);
+
+        while (m.find()) {
+            int headerStart = m.start();
+            int braceOpen = fullCode.indexOf('{', m.end() - 1);
+            if (braceOpen < 0) continue;
+
+            String paramList = m.group(1);
+            List<String> declTypes = extractParamTypesFromDeclaration(paramList);
+
+            if (!sameTypes(sig.paramTypes, declTypes)) continue;
+
+            // Extract full method text using brace matching
+            int methodEnd = findMatchingBrace(fullCode, braceOpen);
+            if (methodEnd < 0) continue;
+
+            return new int[]{headerStart, braceOpen, methodEnd};
+        }
+
+        // If not found
+        return null;
+    }
+
+    private static List<String> extractParamTypesFromDeclaration(String paramList) {
+        List<String> types = new java.util.ArrayList<>();
+        String trimmed = paramList.trim();
+        if (trimmed.isEmpty()) return types;
+
+        // Split by commas (good enough for typical Java params; generics already stripped later)
+        String[] parts = trimmed.split(",");
+        for (String part : parts) {
+            String s = part.trim();
+            if (s.isEmpty()) continue;
+
+            // Remove generics to avoid commas inside <...> causing issues in rare cases
+            s = s.replaceAll("<[^>]*>", "");
+
+            // Parameter tokens: [annotations/modifiers] Type Name
+            // We take everything except the last token as "type"
+            String[] toks = s.trim().split("\\s+");
+            if (toks.length == 1) {
+                // Strange, but treat it as type-only
+                types.add(normalizeType(toks[0]));
+            } else {
+                StringBuilder type = new StringBuilder();
+                for (int i = 0; i < toks.length - 1; i++) {
+                    type.append(toks[i]).append(" ");
+                }
+                types.add(normalizeType(type.toString()));
+            }
+        }
+        return types;
+    }
+
+    private static boolean sameTypes(List<String> a, List<String> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).equals(b.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static int findMatchingBrace(String s, int openBraceIdx) {
+        int depth = 0;
+        for (int i = openBraceIdx; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '{') depth++;
+            else if (c == '}') {
+                depth--;
+                if (depth == 0) return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String insertCommentInsideMethod(String methodText, int braceOpen, List<Integer> offsets) {
+        if (braceOpen < 0 || braceOpen >= methodText.length()) return methodText;
+
+        int bodyStart = braceOpen + 1; // right after '{'
+        String header = methodText.substring(0, bodyStart);
+        String bodyAndClose = methodText.substring(bodyStart);
+
+        // Split body into lines
+        String[] lines = bodyAndClose.split("\n", -1);
+
+        // Count lines “inside the method” starting from first line after '{'
+        // We’ll annotate the line at index (offset-1) if it exists and is not just the closing brace region.
+        boolean annotated = false;
+        for (Integer offset : new java.util.TreeSet<>(offsets)) {
+            int targetIdx = offset == null ? -1 : offset - 1;
+            if (targetIdx < 0 || targetIdx >= lines.length) continue;
+            lines[targetIdx] = "//This is line " + offset + "\n" + lines[targetIdx];
+            annotated = true;
+        }
+        if (!annotated) return methodText;
+
+        String newBody = String.join("\n", lines);
+        return header + newBody;
+    }
+}
@@ -0,0 +1,148 @@
+package zju.cst.aces.hits;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.stmt.BlockStmt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The methods and constructors of one class source, from a single JavaParser parse: signature (name and simple
+ * parameter types) to the character range of the declaration and of its body. Indexes are cached by the hash of
+ * the source, so the many targets of a class share one parse.
+ */
+class MethodIndex {
+    private static final int MAX_CACHED = 256;
+    private static final Map<String, MethodIndex> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, MethodIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MethodIndex> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            });
+
+    private final boolean parsed;
+    private final Map<String, int[]> methods = new LinkedHashMap<>();
+
+    private MethodIndex(String source) {
+        ParseResult<CompilationUnit> result = new JavaParser(new ParserConfiguration()
+                .setLanguageLevel(ParserConfiguration.LanguageLevel.BLEEDING_EDGE)
+                .setAttributeComments(false)).parse(source);
+        parsed = result.isSuccessful() && result.getResult().isPresent();
+        if (!parsed) {
+            return;
+        }
+        int[] lineStarts = lineStarts(source);
+        CompilationUnit unit = result.getResult().get();
+        List<CallableDeclaration<?>> callables = new ArrayList<>();
+        callables.addAll(unit.findAll(MethodDeclaration.class));
+        callables.addAll(unit.findAll(ConstructorDeclaration.class));
+        for (CallableDeclaration<?> callable : callables) {
+            BlockStmt body = callable instanceof MethodDeclaration
+                    ? ((MethodDeclaration) callable).getBody().orElse(null)
+                    : ((ConstructorDeclaration) callable).getBody();
+            int[] declaration = range(callable, lineStarts);
+            int[] block = body == null ? null : range(body, lineStarts);
+            if (declaration == null || block == null) {
+                continue;
+            }
+            List<String> types = new ArrayList<>();
+            for (Parameter parameter : callable.getParameters()) {
+                types.add(HitsPrompts.normalizeType(parameter.getType().asString() + (parameter.isVarArgs() ? "..." : "")));
+            }
+            String key = key(callable.getNameAsString(), types);
+            int[] previous = methods.get(key);
+            // keep the first declaration in source order, as the textual search did
+            if (previous == null || declaration[0] < previous[0]) {
+                methods.put(key, new int[]{declaration[0], block[0], block[1]});
+            }
+        }
+    }
+
+    /**
+     * @param source a class source
+     * @return the index of the source, parsed once per distinct content
+     */
+    static MethodIndex of(String source) {
+        String hash = sha256(source);
+        MethodIndex index = CACHE.get(hash);
+        if (index == null) {
+            index = new MethodIndex(source);
+            CACHE.put(hash, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return whether the source parsed; when it did not, callers fall back to a textual search
+     */
+    boolean isParsed() {
+        return parsed;
+    }
+
+    /**
+     * @param name the method name
+     * @param paramTypes the simple parameter types, normalized like {@link HitsPrompts#normalizeType}
+     * @return the start of the declaration, the index of the opening and of the closing brace of the body, or null
+     */
+    int[] locate(String name, List<String> paramTypes) {
+        return methods.get(key(name, paramTypes));
+    }
+
+    private static String key(String name, List<String> types) {
+        return name + "(" + String.join(",", types) + ")";
+    }
+
+    private static int[] range(Node node, int[] lineStarts) {
+        Range range = node.getRange().orElse(null);
+        if (range == null) {
+            return null;
+        }
+        return new int[]{offset(range.begin, lineStarts), offset(range.end, lineStarts)};
+    }
+
+    private static int offset(Position position, int[] lineStarts) {
+        return lineStarts[position.line - 1] + position.column - 1;
+    }
+
+    private static int[] lineStarts(String source) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                starts.add(i + 1);
+            }
+        }
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
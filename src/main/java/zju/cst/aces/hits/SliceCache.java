@@ -0,0 +1,130 @@
+package zju.cst.aces.hits;
+
+import com.google.gson.JsonObject;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import zju.cst.aces.http.ChatRequests;
+import zju.cst.aces.http.PromptKind;
+import zju.cst.aces.http.PromptTag;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers the HITS slice request of a target from the slice of an earlier target in the same method. The key is
+ * the model, the plain focal method and the rest of the slice prompt with the per-target values (annotated class,
+ * target line, constraint and offset) taken out, so every line of an unchanged method with the same dependency
+ * context shares one slice. Slices are kept on disk, so separate :method runs share them too.
+ * The target is found by the id its template sent along, whichever thread the core renders and calls on.
+ */
+public class SliceCache implements Interceptor {
+    private static final String[] TARGET_TEXT = {"full_fm", "target_method", "lines_to_test", "constraint_text"};
+    /** how hits_gen_slice.ftl renders the offset; other occurrences of the number are part of the context */
+    private static final String OFFSET_TEXT = "line-to-test is line number %s in ";
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private final Path dir;
+
+    /**
+     * @param dir where slices are stored
+     */
+    public SliceCache(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        JsonObject body = ChatRequests.body(request);
+        String prompt = body == null ? null : ChatRequests.promptText(body);
+        PromptTag tag = PromptTag.of(request);
+        TargetValues.Binding binding = tag == null ? null : TargetValues.byId(tag.getTarget());
+        if (prompt == null || binding == null || ChatRequests.kind(request) != PromptKind.SLICE) {
+            return chain.proceed(request);
+        }
+        String key = key(body, prompt, binding);
+        if (key == null) {
+            return chain.proceed(request);
+        }
+        Path file = dir.resolve(key + ".json");
+        if (Files.exists(file)) {
+            try {
+                String cached = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                hits.incrementAndGet();
+                return ChatRequests.jsonResponse(request, cached, "slice");
+            } catch (IOException ignored) {
+                // slice the method again
+            }
+        }
+        misses.incrementAndGet();
+        Response response = chain.proceed(request);
+        if (!response.isSuccessful() || response.body() == null) {
+            return response;
+        }
+        String content = response.body().string();
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.write(tmp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {
+            // the cache is best effort
+        }
+        return ChatRequests.withBody(response, content);
+    }
+
+    /**
+     * @return the key of the slice request, or null when the bound target does not belong to this prompt
+     */
+    static String key(JsonObject body, String prompt, TargetValues.Binding binding) {
+        Map<String, String> values = binding.getValues();
+        String method = values.get("focal_method");
+        String className = binding.getClassName();
+        if (method == null || className == null) {
+            return null;
+        }
+        String context = prompt;
+        for (String name : TARGET_TEXT) {
+            String value = values.get(name);
+            if (value != null && !value.trim().isEmpty()) {
+                context = context.replace(value, "");
+            }
+        }
+        String offset = values.get("offset");
+        if (offset != null && !offset.isEmpty()) {
+            context = context.replace(String.format(OFFSET_TEXT, offset), String.format(OFFSET_TEXT, ""));
+        }
+        String model = body.has("model") ? body.get("model").toString() : "";
+        return sha256(model + "\0" + className + "\0" + method + "\0" + context);
+    }
+
+    /**
+     * @return "hits/lookups" of the JVM, or null when no slice was looked up
+     */
+    public static String summary() {
+        long lookups = hits.get() + misses.get();
+        if (lookups == 0) {
+            return null;
+        }
+        return String.format("Slice cache: %d/%d slices reused", hits.get(), lookups);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return String.format("%064x", new BigInteger(1, digest.digest(text.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
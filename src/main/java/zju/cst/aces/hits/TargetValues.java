@@ -0,0 +1,154 @@
+package zju.cst.aces.hits;
+
+import freemarker.template.TemplateMethodModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The per-target values of the HITS prompts, read by the shared templates of {@link HitsPrompts}:
+ * <pre>
+ * &lt;#assign hits = "zju.cst.aces.hits.TargetValues"?new()(class_name, method_name)&gt;
+ * ${hits.lines_to_test}
+ * </pre>
+ * The data model of the core only names the focal class (by its simple name) and method, so a target is bound by
+ * those two for as long as it runs, and other targets of the same method wait for it. That way the template of
+ * any thread the core renders on finds exactly one target. Each binding also carries a target_id (class, method
+ * and lines), which the templates send along with the request so interceptors can look the target up.
+ */
+public class TargetValues implements TemplateMethodModelEx {
+    public static final String TARGET_ID = "target_id";
+
+    private static final String ANY_METHOD = "*";
+    private static final ReentrantLock LOCK = new ReentrantLock();
+    private static final Condition RELEASED = LOCK.newCondition();
+    private static final Map<String, Binding> BY_METHOD = new HashMap<>();
+    private static final Map<String, Binding> BY_ID = new HashMap<>();
+
+    /**
+     * Bind the values of a target until the binding is closed, waiting while another target of the same method
+     * is bound
+     * @param className the fully qualified focal class
+     * @param methodName the focal method, or null for every method of the class
+     * @param targetId the id of the target, unique among the targets of the run
+     * @param values the values by placeholder name
+     * @return the binding
+     * @throws InterruptedIOException when interrupted while waiting
+     */
+    public static Binding bind(String className, String methodName, String targetId, Map<String, String> values)
+            throws InterruptedIOException {
+        Map<String, String> bound = new HashMap<>(values);
+        bound.put(TARGET_ID, targetId);
+        Binding binding = new Binding(className, key(className, methodName), targetId,
+                Collections.unmodifiableMap(bound));
+        LOCK.lock();
+        try {
+            while (BY_METHOD.containsKey(binding.key)) {
+                RELEASED.await();
+            }
+            BY_METHOD.put(binding.key, binding);
+            BY_ID.put(targetId, binding);
+            return binding;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for another target of " + binding.key);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * @param targetId the target_id the template rendered into the request
+     * @return the open binding with that id, or null
+     */
+    public static Binding byId(String targetId) {
+        if (targetId == null) {
+            return null;
+        }
+        LOCK.lock();
+        try {
+            return BY_ID.get(targetId);
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    /**
+     * The binding of the given class and method: the one of that method, else the one bound for the whole class
+     */
+    static Binding lookup(String className, String methodName) {
+        LOCK.lock();
+        try {
+            Binding binding = methodName == null || methodName.isEmpty() ? null : BY_METHOD.get(key(className, methodName));
+            return binding != null ? binding : BY_METHOD.get(key(className, null));
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    public static class Binding implements AutoCloseable {
+        private final String className;
+        private final String key;
+        private final String targetId;
+        private final Map<String, String> values;
+
+        private Binding(String className, String key, String targetId, Map<String, String> values) {
+            this.className = className;
+            this.key = key;
+            this.targetId = targetId;
+            this.values = values;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getTargetId() {
+            return targetId;
+        }
+
+        public Map<String, String> getValues() {
+            return values;
+        }
+
+        @Override
+        public void close() {
+            LOCK.lock();
+            try {
+                BY_METHOD.remove(key, this);
+                BY_ID.remove(targetId, this);
+                RELEASED.signalAll();
+            } finally {
+                LOCK.unlock();
+            }
+        }
+    }
+
+    @Override
+    public Object exec(List arguments) throws TemplateModelException {
+        Binding binding = lookup(argument(arguments, 0), argument(arguments, 1));
+        return binding == null ? Collections.emptyMap() : binding.values;
+    }
+
+    private static String argument(List arguments, int index) throws TemplateModelException {
+        Object argument = arguments.size() > index ? arguments.get(index) : null;
+        Object unwrapped = argument instanceof TemplateModel ? DeepUnwrap.unwrap((TemplateModel) argument) : argument;
+        return unwrapped == null ? null : String.valueOf(unwrapped);
+    }
+
+    /**
+     * The data model of the core names the focal class by its simple name
+     */
+    private static String key(String className, String methodName) {
+        String simpleName = className == null ? "" : className.substring(className.lastIndexOf('.') + 1);
+        return simpleName + "#" + (methodName == null || methodName.isEmpty() ? ANY_METHOD : methodName);
+    }
+}
@@ -0,0 +1,82 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonObject;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes every generation request to a JSONL file in the OpenAI batch request format instead of sending it.
+ * The custom_id of a line is its response cache key, so the batch output can be imported into the cache
+ * and the run replayed from there. Repair requests are never exported: they depend on the generated test.
+ */
+public class BatchExporter implements Interceptor {
+    private final Path file;
+    private final Set<String> exported = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param file the JSONL file, replaced by this export
+     */
+    public BatchExporter(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, new byte[0]);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return how many distinct prompt calls were exported, repeats of a sampled prompt counted apart
+     */
+    public int getExported() {
+        return exported.size();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        JsonObject body = ChatRequests.body(request);
+        if (body == null) {
+            return chain.proceed(request);
+        }
+        if (ChatRequests.kind(request) == PromptKind.REPAIR) {
+            throw new IOException("Repair request not exported for batch processing");
+        }
+        // the key the cache looks this call up under on import, repeats of a sampled prompt are exported apart
+        PromptTag tag = PromptTag.of(request);
+        String key = tag == null ? null : tag.getCacheKey();
+        if (key == null) {
+            key = ResponseCache.sampleKey(request, body);
+        }
+        if (exported.add(key)) {
+            JsonObject line = new JsonObject();
+            line.addProperty("custom_id", key);
+            line.addProperty("method", "POST");
+            line.addProperty("url", request.url().encodedPath());
+            line.add("body", body);
+            append(line.toString());
+        }
+        // the task gives up on this prompt for now, the batch answer comes back through import-responses
+        throw new IOException("Prompt exported for batch processing");
+    }
+
+    private synchronized void append(String line) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+            writer.write(line);
+            writer.write('\n');
+        }
+    }
+}
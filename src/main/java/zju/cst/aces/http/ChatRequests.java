@@ -0,0 +1,140 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+import java.io.IOException;
+
+/**
+ * Helpers for interceptors that look into OpenAI-compatible chat completion calls.
+ */
+public class ChatRequests {
+    public static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    /**
+     * @return the JSON body of a chat completion request, or null for any other request
+     */
+    public static JsonObject body(Request request) throws IOException {
+        RequestBody body = request.body();
+        if (body == null || !"POST".equalsIgnoreCase(request.method())) {
+            return null;
+        }
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        try {
+            JsonElement json = JsonParser.parseString(buffer.readUtf8());
+            if (json != null && json.isJsonObject() && json.getAsJsonObject().has("messages")) {
+                return json.getAsJsonObject();
+            }
+        } catch (RuntimeException ignored) {
+            // not JSON
+        }
+        return null;
+    }
+
+    public static Request withBody(Request request, JsonObject body) {
+        return request.newBuilder()
+                .method(request.method(), RequestBody.create(body.toString(), JSON))
+                .build();
+    }
+
+    /**
+     * @return the response with its body replaced by the given JSON
+     */
+    public static Response withBody(Response response, String json) {
+        return response.newBuilder()
+                .removeHeader("Content-Length")
+                .removeHeader("Content-Encoding")
+                .header("Content-Type", JSON.toString())
+                .body(ResponseBody.create(json, JSON))
+                .build();
+    }
+
+    /**
+     * @return the text of every message of a chat completion request, one per line
+     */
+    public static String promptText(JsonObject body) {
+        StringBuilder prompt = new StringBuilder();
+        JsonArray messages = body == null ? null : body.getAsJsonArray("messages");
+        if (messages != null) {
+            for (JsonElement message : messages) {
+                JsonElement content = message.getAsJsonObject().get("content");
+                if (content != null && !content.isJsonNull()) {
+                    prompt.append(content.isJsonPrimitive() ? content.getAsString() : content.toString()).append('\n');
+                }
+            }
+        }
+        return prompt.toString();
+    }
+
+    /**
+     * @return the kind of the template the request was rendered from, set by {@link PromptMarkers}
+     */
+    public static PromptKind kind(Request request) {
+        PromptTag tag = PromptTag.of(request);
+        return tag == null ? PromptKind.UNKNOWN : tag.getKind();
+    }
+
+    /**
+     * @return a 200 answer to the request with the given chat completion JSON, for answers that skip the endpoint
+     */
+    public static Response jsonResponse(Request request, String json, String source) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .header("Content-Type", JSON.toString())
+                .header("X-Chatunitest-Cache", source)
+                .body(ResponseBody.create(json, JSON))
+                .build();
+    }
+
+    /**
+     * @return the assistant message of the first choice of a chat completion, or null
+     */
+    public static String content(JsonObject completion) {
+        try {
+            JsonObject message = completion.getAsJsonArray("choices").get(0).getAsJsonObject()
+                    .getAsJsonObject("message");
+            JsonElement content = message.get("content");
+            return content == null || content.isJsonNull() ? null : content.getAsString();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Build a non-streaming chat completion carrying the given content
+     */
+    public static JsonObject completion(String id, String model, String content, String finishReason, JsonObject usage) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", finishReason);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject completion = new JsonObject();
+        completion.addProperty("id", id);
+        completion.addProperty("object", "chat.completion");
+        completion.addProperty("created", System.currentTimeMillis() / 1000);
+        completion.addProperty("model", model);
+        completion.add("choices", choices);
+        if (usage != null) {
+            completion.add("usage", usage);
+        }
+        return completion;
+    }
+}
@@ -0,0 +1,244 @@
+package zju.cst.aces.http;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Spreads chat completion requests over several OpenAI-compatible endpoints. Each endpoint has a weight and a
+ * concurrency cap; a request goes to the endpoint with the highest weight per request in flight and per unit of
+ * its recent latency. Error rate and latency are tracked passively as moving averages: an endpoint that keeps
+ * failing is ejected for a cool-down that doubles with every ejection, then readmitted on probation.
+ * A request whose endpoint fails to answer is retried once on another endpoint.
+ */
+public class EndpointRouter implements Interceptor {
+    private static final double ALPHA = 0.2;
+    private static final double EJECT_ERROR_RATE = 0.5;
+    private static final int MIN_SAMPLES = 5;
+    private static final long BASE_EJECTION_MS = 30_000;
+    private static final long MAX_EJECTION_MS = 300_000;
+
+    private static volatile EndpointRouter shared;
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final String signature;
+    // a lock rather than a monitor, a virtual thread waiting on a monitor pins its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private EndpointRouter(String[] specs) {
+        for (String spec : specs) {
+            if (spec != null && !spec.trim().isEmpty()) {
+                endpoints.add(Endpoint.parse(spec.trim()));
+            }
+        }
+        this.signature = Arrays.toString(specs);
+    }
+
+    /**
+     * @param specs the endpoints as url[|weight[|maxConcurrent]]
+     * @return the JVM-wide router, recreated only when the endpoints change
+     */
+    public static synchronized EndpointRouter shared(String[] specs) {
+        if (shared == null || !shared.signature.equals(Arrays.toString(specs))) {
+            shared = new EndpointRouter(specs);
+        }
+        return shared;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (endpoints.isEmpty() || ChatRequests.body(request) == null) {
+            return chain.proceed(request);
+        }
+        Endpoint first = acquire(null);
+        try {
+            return send(chain, request, first);
+        } catch (IOException e) {
+            if (chain.call().isCanceled() || endpoints.size() < 2) {
+                throw e;
+            }
+            Endpoint second = acquire(first);
+            return send(chain, request, second);
+        }
+    }
+
+    private Response send(Chain chain, Request request, Endpoint endpoint) throws IOException {
+        long start = System.currentTimeMillis();
+        try {
+            Response response = chain.proceed(request.newBuilder().url(endpoint.url).build());
+            boolean failed = response.code() == 429 || response.code() >= 500;
+            release(endpoint, failed, System.currentTimeMillis() - start);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            release(endpoint, !chain.call().isCanceled(), System.currentTimeMillis() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Wait for the best endpoint with a free slot
+     * @param avoid an endpoint that just failed this request, passed over only while another admitted endpoint
+     *              has a free slot
+     */
+    private Endpoint acquire(Endpoint avoid) throws IOException {
+        lock.lock();
+        try {
+            return awaitEndpoint(avoid);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Endpoint awaitEndpoint(Endpoint avoid) throws IOException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            boolean passOver = avoid != null && hasFreeAlternative(avoid, now);
+            Endpoint best = null;
+            Endpoint soonest = null;
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.ejectedUntil > now) {
+                    if (soonest == null || endpoint.ejectedUntil < soonest.ejectedUntil) {
+                        soonest = endpoint;
+                    }
+                    continue;
+                }
+                if (endpoint.inFlight >= endpoint.maxConcurrent || (endpoint == avoid && passOver)) {
+                    continue;
+                }
+                if (best == null || endpoint.score() > best.score()) {
+                    best = endpoint;
+                }
+            }
+            if (best == null && soonest != null && allEjected(now)) {
+                // never fail a request only because every endpoint is ejected, try the one back first
+                best = soonest;
+            }
+            if (best != null) {
+                best.inFlight++;
+                return best;
+            }
+            try {
+                released.await(soonest == null ? 1000 : Math.max(1, Math.min(1000, soonest.ejectedUntil - now)),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an endpoint");
+            }
+        }
+    }
+
+    private boolean hasFreeAlternative(Endpoint avoid, long now) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint != avoid && endpoint.ejectedUntil <= now && endpoint.inFlight < endpoint.maxConcurrent) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean allEjected(long now) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.ejectedUntil <= now) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void release(Endpoint endpoint, boolean failed, long latencyMillis) {
+        lock.lock();
+        try {
+            update(endpoint, failed, latencyMillis);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void update(Endpoint endpoint, boolean failed, long latencyMillis) {
+        endpoint.inFlight--;
+        endpoint.samples++;
+        endpoint.errorRate = ALPHA * (failed ? 1 : 0) + (1 - ALPHA) * endpoint.errorRate;
+        if (!failed) {
+            endpoint.latencyMillis = endpoint.latencyMillis == 0 ? latencyMillis
+                    : ALPHA * latencyMillis + (1 - ALPHA) * endpoint.latencyMillis;
+            endpoint.ejections = endpoint.errorRate < EJECT_ERROR_RATE / 2 ? 0 : endpoint.ejections;
+        }
+        if (failed && endpoint.samples >= MIN_SAMPLES && endpoint.errorRate >= EJECT_ERROR_RATE
+                && endpoint.ejectedUntil <= System.currentTimeMillis()) {
+            long cooldown = Math.min(MAX_EJECTION_MS, BASE_EJECTION_MS << Math.min(endpoint.ejections, 10));
+            endpoint.ejections++;
+            endpoint.ejectedUntil = System.currentTimeMillis() + cooldown;
+            // on readmission it starts just below the ejection threshold, one more failure ejects it again
+            endpoint.errorRate = EJECT_ERROR_RATE * (1 - ALPHA);
+        }
+    }
+
+    /**
+     * @return one line per endpoint with its health, for the run summary
+     */
+    public String summary() {
+        lock.lock();
+        try {
+            StringBuilder summary = new StringBuilder("Endpoints:");
+            for (Endpoint endpoint : endpoints) {
+                summary.append(String.format("%n  %s requests=%d errorRate=%.2f latency=%.0fms ejections=%d%s",
+                        endpoint.url, endpoint.samples, endpoint.errorRate, endpoint.latencyMillis, endpoint.ejections,
+                        endpoint.ejectedUntil > System.currentTimeMillis() ? " (ejected)" : ""));
+            }
+            return summary.toString();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static class Endpoint {
+        final HttpUrl url;
+        final double weight;
+        final int maxConcurrent;
+        int inFlight;
+        long samples;
+        double errorRate;
+        double latencyMillis;
+        int ejections;
+        long ejectedUntil;
+
+        Endpoint(HttpUrl url, double weight, int maxConcurrent) {
+            this.url = url;
+            this.weight = weight;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        /**
+         * @param spec url[|weight[|maxConcurrent]], maxConcurrent 0 for no cap
+         */
+        static Endpoint parse(String spec) {
+            String[] parts = spec.split("\\|");
+            HttpUrl url = HttpUrl.parse(parts[0].trim());
+            if (url == null) {
+                throw new IllegalArgumentException("Invalid endpoint url: " + parts[0]);
+            }
+            double weight = parts.length > 1 && !parts[1].trim().isEmpty() ? Double.parseDouble(parts[1].trim()) : 1;
+            int maxConcurrent = parts.length > 2 && !parts[2].trim().isEmpty() ? Integer.parseInt(parts[2].trim()) : 0;
+            return new Endpoint(url, weight, maxConcurrent <= 0 ? Integer.MAX_VALUE : maxConcurrent);
+        }
+
+        double score() {
+            // unmeasured endpoints count as fast, so each gets traffic early
+            double latency = Math.max(1, latencyMillis);
+            return weight * (1 - errorRate) / ((inFlight + 1) * latency);
+        }
+    }
+}
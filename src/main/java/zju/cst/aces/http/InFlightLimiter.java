@@ -0,0 +1,54 @@
+package zju.cst.aces.http;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of LLM requests in flight across every client of the JVM, independent of how many
+ * threads are generating tests.
+ */
+public class InFlightLimiter implements Interceptor {
+    private static volatile InFlightLimiter shared;
+
+    private final int permits;
+    private final Semaphore semaphore;
+
+    private InFlightLimiter(int permits) {
+        this.permits = permits;
+        this.semaphore = new Semaphore(permits, true);
+    }
+
+    /**
+     * @param permits the maximum number of requests in flight
+     * @return the JVM-wide limiter, recreated only when the limit changes
+     */
+    public static synchronized InFlightLimiter shared(int permits) {
+        if (shared == null || shared.permits != permits) {
+            shared = new InFlightLimiter(permits);
+        }
+        return shared;
+    }
+
+    public int inFlight() {
+        return permits - semaphore.availablePermits();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request slot");
+        }
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            semaphore.release();
+        }
+    }
+}
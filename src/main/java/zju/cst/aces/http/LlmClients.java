@@ -0,0 +1,116 @@
+package zju.cst.aces.http;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One OkHttp client per distinct HTTP setting for the whole JVM. Clients derived with newBuilder() share its
+ * connection pool and dispatcher, so every Config of a run reuses the same warm connections.
+ */
+public class LlmClients {
+    private static final Map<Settings, OkHttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    /**
+     * @return the shared client for these settings, built on first use
+     */
+    public static OkHttpClient shared(Settings settings) {
+        return CLIENTS.computeIfAbsent(settings, LlmClients::build);
+    }
+
+    private static OkHttpClient build(Settings settings) {
+        Dispatcher dispatcher = new Dispatcher();
+        // the defaults (64 total, 5 per host) would queue most calls to a single LLM endpoint
+        dispatcher.setMaxRequests(Math.max(64, settings.maxConnections * 4));
+        dispatcher.setMaxRequestsPerHost(Math.max(5, settings.maxConnections));
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(settings.maxConnections, settings.keepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(settings.http2 ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                .connectTimeout(settings.connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(settings.readTimeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(settings.writeTimeoutSeconds, TimeUnit.SECONDS)
+                .callTimeout(settings.callTimeoutSeconds, TimeUnit.SECONDS);
+        Proxy proxy = parseProxy(settings.proxy);
+        if (proxy != null) {
+            builder.proxy(proxy);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param proxy host:port, "null:-1" or blank for a direct connection
+     */
+    static Proxy parseProxy(String proxy) {
+        if (proxy == null || proxy.trim().isEmpty()) {
+            return null;
+        }
+        int colon = proxy.lastIndexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        String host = proxy.substring(0, colon).trim();
+        int port;
+        try {
+            port = Integer.parseInt(proxy.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (host.equals("null") || port <= 0) {
+            return null;
+        }
+        return new Proxy(Proxy.Type.HTTP, InetSocketAddress.createUnresolved(host, port));
+    }
+
+    /**
+     * HTTP settings of the LLM client, two equal settings share one client
+     */
+    public static class Settings {
+        final String proxy;
+        final int maxConnections;
+        final long keepAliveSeconds;
+        final boolean http2;
+        final long connectTimeoutSeconds;
+        final long readTimeoutSeconds;
+        final long writeTimeoutSeconds;
+        final long callTimeoutSeconds;
+
+        public Settings(String proxy, int maxConnections, long keepAliveSeconds, boolean http2,
+                        long connectTimeoutSeconds, long readTimeoutSeconds, long writeTimeoutSeconds,
+                        long callTimeoutSeconds) {
+            this.proxy = proxy;
+            this.maxConnections = Math.max(1, maxConnections);
+            this.keepAliveSeconds = keepAliveSeconds;
+            this.http2 = http2;
+            this.connectTimeoutSeconds = connectTimeoutSeconds;
+            this.readTimeoutSeconds = readTimeoutSeconds;
+            this.writeTimeoutSeconds = writeTimeoutSeconds;
+            this.callTimeoutSeconds = callTimeoutSeconds;
+        }
+
+        private Object[] fields() {
+            return new Object[]{proxy, maxConnections, keepAliveSeconds, http2, connectTimeoutSeconds,
+                    readTimeoutSeconds, writeTimeoutSeconds, callTimeoutSeconds};
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Settings && Arrays.equals(fields(), ((Settings) o).fields());
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(fields());
+        }
+    }
+}
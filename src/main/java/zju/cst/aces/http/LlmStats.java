@@ -0,0 +1,115 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM-wide counters of the chat completion calls that reached the endpoint, including the prompt tokens the
+ * provider served from its prefix cache (usage.prompt_tokens_details.cached_tokens and the equivalents of
+ * other OpenAI-compatible servers).
+ */
+public class LlmStats implements Interceptor {
+    private static final LlmStats INSTANCE = new LlmStats();
+    private static final long MAX_PEEK_BYTES = 16L * 1024 * 1024;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong cachedTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong latencyMillis = new AtomicLong();
+
+    public static LlmStats get() {
+        return INSTANCE;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        long start = System.currentTimeMillis();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            requests.incrementAndGet();
+            failures.incrementAndGet();
+            throw e;
+        }
+        requests.incrementAndGet();
+        latencyMillis.addAndGet(System.currentTimeMillis() - start);
+        if (!response.isSuccessful()) {
+            failures.incrementAndGet();
+            return response;
+        }
+        String contentType = response.header("Content-Type", "");
+        if (contentType.contains("json")) {
+            ResponseBody body = response.peekBody(MAX_PEEK_BYTES);
+            record(body.string());
+        }
+        return response;
+    }
+
+    void record(String json) {
+        JsonObject usage;
+        try {
+            JsonElement element = JsonParser.parseString(json);
+            if (element == null || !element.isJsonObject() || !element.getAsJsonObject().has("usage")
+                    || !element.getAsJsonObject().get("usage").isJsonObject()) {
+                return;
+            }
+            usage = element.getAsJsonObject().getAsJsonObject("usage");
+        } catch (RuntimeException e) {
+            return;
+        }
+        promptTokens.addAndGet(longOf(usage, "prompt_tokens"));
+        completionTokens.addAndGet(longOf(usage, "completion_tokens"));
+        long cached = 0;
+        if (usage.has("prompt_tokens_details") && usage.get("prompt_tokens_details").isJsonObject()) {
+            cached = longOf(usage.getAsJsonObject("prompt_tokens_details"), "cached_tokens");
+        }
+        if (cached == 0) {
+            cached = longOf(usage, "prompt_cache_hit_tokens");
+        }
+        if (cached == 0) {
+            cached = longOf(usage, "cache_read_input_tokens");
+        }
+        cachedTokens.addAndGet(cached);
+    }
+
+    private static long longOf(JsonObject object, String field) {
+        JsonElement value = object.get(field);
+        try {
+            return value == null || value.isJsonNull() ? 0 : value.getAsLong();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getCachedTokens() {
+        return cachedTokens.get();
+    }
+
+    /**
+     * @return a one-line summary, or null when no request was sent
+     */
+    public String summary() {
+        long n = requests.get();
+        if (n == 0) {
+            return null;
+        }
+        long prompt = promptTokens.get();
+        return String.format("LLM requests: %d (%d failed), avg latency %dms, prompt tokens %d (%d cached, %.1f%%), completion tokens %d",
+                n, failures.get(), latencyMillis.get() / n, prompt, cachedTokens.get(),
+                prompt == 0 ? 0.0 : 100.0 * cachedTokens.get() / prompt, completionTokens.get());
+    }
+}
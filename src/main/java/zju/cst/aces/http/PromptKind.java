@@ -0,0 +1,68 @@
+package zju.cst.aces.http;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * What a chat request asks for, decided by the template it was rendered from. A template names its kind in a
+ * comment like <code>&lt;#-- chatunitest-prompt: reasoning --&gt;</code>; otherwise the file name decides.
+ */
+public enum PromptKind {
+    /** a new unit test, answered with a java code block */
+    GENERATION,
+    /** a fix of a failing unit test, answered with a java code block */
+    REPAIR,
+    /** the HITS decomposition of the focal method, answered in JSON */
+    SLICE,
+    /** a chain-of-thought prompt, answered in prose that embeds code */
+    REASONING,
+    /** not rendered from a marked template */
+    UNKNOWN;
+
+    private static final Pattern DECLARED = Pattern.compile("<#--\\s*chatunitest-prompt:\\s*(\\w+)\\s*-->");
+
+    /**
+     * @param name the template file name, possibly with a directory
+     * @param source the template source
+     * @return the kind of the requests rendered from the template, or null for system templates, which are sent
+     * along with the user template of their request
+     */
+    public static PromptKind forTemplate(String name, String source) {
+        Matcher declared = DECLARED.matcher(source);
+        if (declared.find()) {
+            try {
+                return valueOf(declared.group(1).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+                // unknown kind, the file name decides
+            }
+        }
+        String file = name.replace('\\', '/');
+        file = file.substring(file.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        if (!file.endsWith(".ftl") || file.contains("system")) {
+            return null;
+        }
+        if (file.contains("repair")) {
+            return REPAIR;
+        }
+        if (file.contains("slice")) {
+            return SLICE;
+        }
+        return GENERATION;
+    }
+
+    /**
+     * @param value a kind name, e.g. the one of a template marker
+     * @return the kind, UNKNOWN for null or an unknown name
+     */
+    public static PromptKind parse(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN;
+        }
+    }
+}
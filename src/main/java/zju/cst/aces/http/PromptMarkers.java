@@ -0,0 +1,92 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Carries the {@link PromptKind} of a template to the interceptors. The prompt directory of the run writes a
+ * marker line at the top of every template; this interceptor takes the markers out of the rendered messages
+ * and tags the request with the kind (and the HITS target the prompt was rendered for) instead, see
+ * {@link PromptTag}, so neither the model nor the provider sees them. It also numbers the call among the repeats
+ * of its prompt, once, so the copies, candidates and retries made further in share the number.
+ * Must be the first interceptor of the client handed to the core.
+ */
+public class PromptMarkers implements Interceptor {
+    private static final Pattern MARKER = Pattern.compile(
+            "\\[\\[chatunitest-prompt:(\\w+)(?: target=([^\\]\\r\\n]*))?]]\\r?\\n?");
+
+    /**
+     * @param source the template source
+     * @param kind the kind of the template, null to leave it unmarked
+     * @param target a template expression that renders the target id, or null
+     * @return the template with the marker line in front of its output
+     */
+    public static String mark(String source, PromptKind kind, String target) {
+        if (kind == null) {
+            return source;
+        }
+        String marker = "[[chatunitest-prompt:" + kind.name() + (target == null ? "" : " target=" + target) + "]]\n";
+        // an ftl header has to stay the first thing in the template
+        if (source.startsWith("<#ftl")) {
+            int end = source.indexOf('>') + 1;
+            return source.substring(0, end) + marker + source.substring(end);
+        }
+        return marker + source;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        JsonObject body = ChatRequests.body(request);
+        if (body == null) {
+            return chain.proceed(request);
+        }
+        String[] marker = strip(body);
+        int sample = ResponseCache.nextSample(request.url().toString(), body);
+        if (marker == null) {
+            return chain.proceed(new PromptTag(PromptKind.UNKNOWN, null).withSample(sample).attachTo(request));
+        }
+        PromptTag tag = new PromptTag(PromptKind.parse(marker[0]), marker[1]).withSample(sample);
+        return chain.proceed(tag.attachTo(ChatRequests.withBody(request, body)));
+    }
+
+    /**
+     * Remove every marker from the messages of a chat completion request
+     * @return the kind and the target of the last marked message, the user prompt of the request, or null when
+     * none is marked
+     */
+    static String[] strip(JsonObject body) {
+        JsonArray messages = body.getAsJsonArray("messages");
+        String[] marker = null;
+        if (messages == null) {
+            return null;
+        }
+        for (JsonElement message : messages) {
+            if (!message.isJsonObject()) {
+                continue;
+            }
+            JsonElement content = message.getAsJsonObject().get("content");
+            if (content == null || !content.isJsonPrimitive()) {
+                continue;
+            }
+            Matcher matcher = MARKER.matcher(content.getAsString());
+            boolean found = false;
+            while (matcher.find()) {
+                marker = new String[]{matcher.group(1), matcher.group(2)};
+                found = true;
+            }
+            if (found) {
+                message.getAsJsonObject().addProperty("content", matcher.replaceAll(""));
+            }
+        }
+        return marker;
+    }
+}
@@ -0,0 +1,74 @@
+package zju.cst.aces.http;
+
+import okhttp3.Request;
+
+/**
+ * What the interceptors know about a chat request beyond its body, carried as an OkHttp request tag so it never
+ * leaves the JVM: the kind of its template, the HITS target it was rendered for and the number of the call among
+ * the repeats of its prompt, all set by {@link PromptMarkers}, and the key {@link ResponseCache} looked it up
+ * under. Hedged copies, candidates and retries of a request keep its tag.
+ */
+public final class PromptTag {
+    private final PromptKind kind;
+    private final String target;
+    private final int sample;
+    private final String cacheKey;
+
+    public PromptTag(PromptKind kind, String target) {
+        this(kind, target, -1, null);
+    }
+
+    private PromptTag(PromptKind kind, String target, int sample, String cacheKey) {
+        this.kind = kind == null ? PromptKind.UNKNOWN : kind;
+        this.target = target == null || target.isEmpty() ? null : target;
+        this.sample = sample;
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * @return the tag of the request, or null when it has none
+     */
+    public static PromptTag of(Request request) {
+        return request.tag(PromptTag.class);
+    }
+
+    /**
+     * @return a copy of the request carrying this tag
+     */
+    public Request attachTo(Request request) {
+        return request.newBuilder().tag(PromptTag.class, this).build();
+    }
+
+    public PromptKind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the target id of the HITS target the prompt was rendered for, or null
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return how many calls of the same prompt the core made before this one, or -1 when not numbered
+     */
+    public int getSample() {
+        return sample;
+    }
+
+    /**
+     * @return the response cache key of the request, or null when it did not pass a cache
+     */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public PromptTag withSample(int sample) {
+        return new PromptTag(kind, target, sample, cacheKey);
+    }
+
+    public PromptTag withCacheKey(String cacheKey) {
+        return new PromptTag(kind, target, sample, cacheKey);
+    }
+}
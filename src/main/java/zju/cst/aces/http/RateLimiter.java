@@ -0,0 +1,254 @@
+package zju.cst.aces.http;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import zju.cst.aces.batch.TokenCounter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per API key token buckets for requests/min and tokens/min. Each request goes to the key with the most
+ * remaining capacity, and 429/503 answers cool the key down for Retry-After (or a jittered exponential backoff)
+ * before the request is retried on the next available key. Keys are only chosen here when a budget is set;
+ * otherwise requests keep the key the core signed them with and a 429/503 is only retried after the backoff.
+ */
+public class RateLimiter implements Interceptor {
+    private static final long MAX_BACKOFF_MS = 60_000;
+    private static final long BASE_BACKOFF_MS = 1_000;
+
+    private static volatile RateLimiter shared;
+
+    private final List<KeyState> keys = new ArrayList<>();
+    // a lock rather than a monitor, a virtual thread waiting on a monitor pins its carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private int next;
+    private final int requestsPerMinute;
+    private final int tokensPerMinute;
+    private final int maxRetries;
+    private final TokenCounter tokenCounter;
+    private final String signature;
+
+    private RateLimiter(String[] apiKeys, int requestsPerMinute, int tokensPerMinute, int maxRetries, String model) {
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.maxRetries = maxRetries;
+        this.tokenCounter = tokensPerMinute > 0 ? TokenCounter.forModel(model) : null;
+        this.signature = signature(apiKeys, requestsPerMinute, tokensPerMinute, maxRetries, model);
+        long now = System.currentTimeMillis();
+        if (requestsPerMinute > 0 || tokensPerMinute > 0) {
+            for (String key : apiKeys) {
+                keys.add(new KeyState(key.trim(), requestsPerMinute, tokensPerMinute, now));
+            }
+        }
+    }
+
+    /**
+     * @return the JVM-wide limiter, so every Config of the run shares the same buckets
+     */
+    public static synchronized RateLimiter shared(String[] apiKeys, int requestsPerMinute, int tokensPerMinute,
+                                                  int maxRetries, String model) {
+        String signature = signature(apiKeys, requestsPerMinute, tokensPerMinute, maxRetries, model);
+        if (shared == null || !shared.signature.equals(signature)) {
+            shared = new RateLimiter(apiKeys, requestsPerMinute, tokensPerMinute, maxRetries, model);
+        }
+        return shared;
+    }
+
+    private static String signature(String[] apiKeys, int rpm, int tpm, int retries, String model) {
+        return Arrays.toString(apiKeys) + "|" + rpm + "|" + tpm + "|" + retries + "|" + model;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        int tokens = estimateTokens(request);
+        for (int attempt = 0; ; attempt++) {
+            KeyState key = acquire(tokens);
+            Request keyed = key == null ? request
+                    : request.newBuilder().header("Authorization", "Bearer " + key.key).build();
+            Response response = chain.proceed(keyed);
+            if ((response.code() != 429 && response.code() != 503) || attempt >= maxRetries) {
+                return response;
+            }
+            long wait = retryAfterMillis(response, attempt);
+            response.close();
+            if (key != null) {
+                coolDown(key, wait);
+            } else {
+                sleep(wait);
+            }
+        }
+    }
+
+    /**
+     * Block until a key has capacity for one request of the given size and take it
+     * @return the chosen key, or null when there are no keys to spread over; ties go round-robin
+     */
+    private KeyState acquire(int tokens) throws IOException {
+        if (keys.isEmpty()) {
+            return null;
+        }
+        lock.lock();
+        try {
+            return awaitKey(tokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private KeyState awaitKey(int tokens) throws IOException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            KeyState best = null;
+            long minWait = Long.MAX_VALUE;
+            int bestIndex = -1;
+            for (int i = 0; i < keys.size(); i++) {
+                int index = (next + i) % keys.size();
+                KeyState key = keys.get(index);
+                key.refill(now, requestsPerMinute, tokensPerMinute);
+                long wait = key.waitMillis(now, tokens, requestsPerMinute, tokensPerMinute);
+                // scanning from the key after the last one taken, so equal headroom rotates over the keys
+                if (wait == 0 && (best == null || key.headroom(requestsPerMinute, tokensPerMinute) > best.headroom(requestsPerMinute, tokensPerMinute))) {
+                    best = key;
+                    bestIndex = index;
+                }
+                minWait = Math.min(minWait, wait);
+            }
+            if (best != null) {
+                best.take(tokens, requestsPerMinute, tokensPerMinute);
+                next = (bestIndex + 1) % keys.size();
+                return best;
+            }
+            try {
+                released.await(Math.max(1, minWait), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for rate limit");
+            }
+        }
+    }
+
+    private void coolDown(KeyState key, long millis) {
+        lock.lock();
+        try {
+            key.coolUntil = Math.max(key.coolUntil, System.currentTimeMillis() + millis);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retry-After in seconds or as an HTTP date is honoured, otherwise full-jitter exponential backoff
+     */
+    static long retryAfterMillis(Response response, int attempt) {
+        String retryAfterMs = response.header("retry-after-ms");
+        String retryAfter = response.header("Retry-After");
+        try {
+            if (retryAfterMs != null) {
+                return Math.min(MAX_BACKOFF_MS, (long) Double.parseDouble(retryAfterMs.trim()));
+            }
+            if (retryAfter != null) {
+                return Math.min(MAX_BACKOFF_MS, (long) (Double.parseDouble(retryAfter.trim()) * 1000));
+            }
+        } catch (NumberFormatException ignored) {
+            // not a number of seconds, maybe an HTTP date
+        }
+        if (retryAfter != null) {
+            try {
+                long until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return Math.max(0, Math.min(MAX_BACKOFF_MS, until - System.currentTimeMillis()));
+            } catch (DateTimeParseException ignored) {
+                // garbage, fall through to backoff
+            }
+        }
+        long cap = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    }
+
+    private int estimateTokens(Request request) throws IOException {
+        if (tokenCounter == null || request.body() == null) {
+            return 0;
+        }
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return tokenCounter.count(buffer.readUtf8());
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during backoff");
+        }
+    }
+
+    private static class KeyState {
+        final String key;
+        double requests;
+        double tokens;
+        long lastRefill;
+        long coolUntil;
+
+        KeyState(String key, int requestsPerMinute, int tokensPerMinute, long now) {
+            this.key = key;
+            this.requests = requestsPerMinute;
+            this.tokens = tokensPerMinute;
+            this.lastRefill = now;
+        }
+
+        void refill(long now, int rpm, int tpm) {
+            double minutes = (now - lastRefill) / 60_000.0;
+            requests = Math.min(rpm, requests + minutes * rpm);
+            tokens = Math.min(tpm, tokens + minutes * tpm);
+            lastRefill = now;
+        }
+
+        /**
+         * @return how long until this key can take the request, 0 when it can right now
+         */
+        long waitMillis(long now, int cost, int rpm, int tpm) {
+            long wait = Math.max(0, coolUntil - now);
+            if (rpm > 0 && requests < 1) {
+                wait = Math.max(wait, (long) Math.ceil((1 - requests) * 60_000.0 / rpm));
+            }
+            // a request larger than the whole bucket only waits for a full bucket
+            double needed = Math.min(cost, tpm);
+            if (tpm > 0 && tokens < needed) {
+                wait = Math.max(wait, (long) Math.ceil((needed - tokens) * 60_000.0 / tpm));
+            }
+            return wait;
+        }
+
+        double headroom(int rpm, int tpm) {
+            double r = rpm > 0 ? requests / rpm : 1;
+            double t = tpm > 0 ? tokens / tpm : 1;
+            return Math.min(r, t);
+        }
+
+        void take(int cost, int rpm, int tpm) {
+            if (rpm > 0) {
+                requests -= 1;
+            }
+            if (tpm > 0) {
+                tokens -= cost;
+            }
+        }
+    }
+}
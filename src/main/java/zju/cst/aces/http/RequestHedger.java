@@ -0,0 +1,292 @@
+package zju.cst.aces.http;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second copy of a chat completion request that is still pending after a percentile of the recent
+ * latencies, returns whichever copy answers first and cancels the other. The first copy runs on the calling
+ * thread; only the second one is enqueued, so it goes through the downstream client where the rate limiter hands
+ * it the key with the most headroom. Latencies are taken on the wire by {@link #timer()}, and the wait for a copy
+ * starts when the first one is sent, so waiting for a rate limit, an in-flight slot or an endpoint never triggers
+ * a copy. Hedges are capped at a share of all requests so a slow endpoint does not get twice the load. Latencies
+ * and counters are JVM-wide. Must be the first interceptor of its client, the copies go through the downstream
+ * client instead.
+ */
+public class RequestHedger implements Interceptor {
+    private static final int WINDOW = 256;
+    private static final int MIN_SAMPLES = 20;
+
+    private static final long[] latencies = new long[WINDOW];
+    private static int samples;
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong hedges = new AtomicLong();
+    private static final AtomicLong hedgeWins = new AtomicLong();
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "chatunitest-hedge-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OkHttpClient downstream;
+    private final double percentile;
+    private final double maxExtra;
+
+    /**
+     * @param downstream the client the copies go through, without this interceptor but with {@link #timer()}
+     * @param percentile the percentile of recent latencies after which a copy is sent, e.g. 95
+     * @param maxExtra the most hedges as a share of all requests, e.g. 0.05
+     */
+    public RequestHedger(OkHttpClient downstream, double percentile, double maxExtra) {
+        this.downstream = downstream;
+        this.percentile = percentile;
+        this.maxExtra = maxExtra;
+    }
+
+    /**
+     * @return the network interceptor that records the latencies and starts the wait for a copy
+     */
+    public static Interceptor timer() {
+        return chain -> {
+            Request request = chain.request();
+            Flight flight = request.tag(Flight.class);
+            if (flight != null) {
+                flight.sent();
+            }
+            long start = System.currentTimeMillis();
+            try {
+                Response response = chain.proceed(request);
+                if (response.isSuccessful()) {
+                    record(System.currentTimeMillis() - start);
+                }
+                return response;
+            } finally {
+                if (flight != null) {
+                    flight.answered();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (ChatRequests.body(request) == null) {
+            return chain.proceed(request);
+        }
+        requests.incrementAndGet();
+        long threshold = threshold(percentile);
+        if (threshold <= 0) {
+            return chain.proceed(request);
+        }
+
+        Flight flight = new Flight(request, threshold);
+        flight.primary = downstream.newCall(request.newBuilder().tag(Flight.class, flight).build());
+        Response response = null;
+        IOException failure = null;
+        Response winner = null;
+        try {
+            try {
+                response = flight.primary.execute();
+            } catch (IOException e) {
+                failure = e;
+            }
+            if (response != null && response.isSuccessful()) {
+                winner = response;
+                return response;
+            }
+            // the first copy failed or was cancelled by a hedge that answered
+            Outcome hedged = flight.hedgeOutcome();
+            if (hedged != null && hedged.response != null
+                    && (hedged.response.isSuccessful() || response == null)) {
+                if (hedged.response.isSuccessful()) {
+                    hedgeWins.incrementAndGet();
+                }
+                winner = hedged.response;
+                return hedged.response;
+            }
+            if (response != null) {
+                winner = response;
+                return response;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a hedged request");
+        } finally {
+            flight.settle(winner, response);
+        }
+    }
+
+    private static class Outcome {
+        final Response response;
+        final IOException failure;
+
+        Outcome(Response response, IOException failure) {
+            this.response = response;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * One request and its copy; the copy is sent at most once, and only while the first one is on the wire
+     */
+    private class Flight {
+        final Request request;
+        final long threshold;
+        final BlockingQueue<Outcome> results = new LinkedBlockingQueue<>();
+        final AtomicBoolean settled = new AtomicBoolean();
+        volatile Call primary;
+        private Call hedge;
+        private ScheduledFuture<?> pending;
+        private boolean launchable = true;
+
+        Flight(Request request, long threshold) {
+            this.request = request;
+            this.threshold = threshold;
+        }
+
+        synchronized void sent() {
+            if (launchable && hedge == null && pending == null) {
+                pending = TIMER.schedule(this::launch, threshold, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void answered() {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+
+        private synchronized void launch() {
+            pending = null;
+            if (!launchable || hedge != null || !takeHedgeSlot()) {
+                return;
+            }
+            hedge = downstream.newCall(request);
+            hedge.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call c, IOException e) {
+                    results.add(new Outcome(null, e));
+                }
+
+                @Override
+                public void onResponse(Call c, Response response) {
+                    if (settled.get()) {
+                        response.close();
+                        return;
+                    }
+                    results.add(new Outcome(response, null));
+                    if (settled.get()) {
+                        drain();
+                    } else if (response.isSuccessful()) {
+                        // the first copy returns from its cancelled call and picks this answer up
+                        primary.cancel();
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return the outcome of the copy, or null when none was sent; no copy is sent after this
+         */
+        Outcome hedgeOutcome() throws InterruptedException {
+            Call sent;
+            synchronized (this) {
+                answered();
+                launchable = false;
+                sent = hedge;
+            }
+            return sent == null ? null : results.take();
+        }
+
+        /**
+         * Cancel the copy that lost and close every response but the winner, the winner's body is still to be read
+         */
+        void settle(Response winner, Response primaryResponse) {
+            Call sent;
+            synchronized (this) {
+                answered();
+                launchable = false;
+                settled.set(true);
+                sent = hedge;
+            }
+            if (sent != null) {
+                sent.cancel();
+            }
+            if (primaryResponse != null && primaryResponse != winner) {
+                primaryResponse.close();
+            }
+            drain();
+        }
+
+        private void drain() {
+            Outcome outcome;
+            while ((outcome = results.poll()) != null) {
+                if (outcome.response != null) {
+                    outcome.response.close();
+                }
+            }
+        }
+    }
+
+    private boolean takeHedgeSlot() {
+        while (true) {
+            long current = hedges.get();
+            if (current + 1 > maxExtra * requests.get()) {
+                return false;
+            }
+            if (hedges.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static synchronized void record(long millis) {
+        latencies[samples % WINDOW] = millis;
+        samples++;
+    }
+
+    /**
+     * @return the given percentile of the recent latencies in ms, or 0 while there are too few samples
+     */
+    static synchronized long threshold(double percentile) {
+        int n = Math.min(samples, WINDOW);
+        if (n < MIN_SAMPLES || percentile <= 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }
+
+    /**
+     * @return the hedges of the JVM as "hedged/requests, wins", or null when nothing was hedged
+     */
+    public static String summary() {
+        long hedged = hedges.get();
+        if (hedged == 0) {
+            return null;
+        }
+        return String.format("Hedged %d of %d requests (%.1f%%), the hedge answered first %d times",
+                hedged, requests.get(), 100.0 * hedged / Math.max(1, requests.get()), hedgeWins.get());
+    }
+}
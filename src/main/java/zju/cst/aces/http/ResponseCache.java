@@ -0,0 +1,266 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonObject;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed on-disk cache of chat completion responses. The key covers everything that decides the
+ * answer of a deterministic call: url, model, messages, temperature, top_p and max_tokens. A call that samples
+ * (temperature above 0) is not deterministic, so the repeats of one prompt within a run are numbered and each
+ * is its own entry: testNumber &gt; 1 still gets distinct tests, and a later run replays them in the same way.
+ * A repeat is a call of the core, numbered by {@link PromptMarkers}; its hedged copies, repair candidates and
+ * retries keep that number.
+ * Entries are evicted least recently used first (by file mtime, which a hit refreshes) once the cache outgrows
+ * its size limit.
+ */
+public class ResponseCache implements Interceptor {
+    private static volatile ResponseCache shared;
+    private static final Map<String, AtomicInteger> SAMPLES = new ConcurrentHashMap<>();
+
+    private final Path dir;
+    private final boolean read;
+    private final boolean write;
+    private final long maxBytes;
+    private final AtomicLong size = new AtomicLong(-1);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private ResponseCache(Path dir, String mode, long maxBytes) {
+        this.dir = dir;
+        this.read = mode.equalsIgnoreCase("read") || mode.equalsIgnoreCase("readwrite");
+        this.write = mode.equalsIgnoreCase("write") || mode.equalsIgnoreCase("readwrite");
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param dir the cache directory
+     * @param mode read, write, readwrite or off
+     * @param maxBytes the size limit, 0 for none
+     * @return the JVM-wide cache, or null when the mode is off
+     */
+    public static synchronized ResponseCache shared(Path dir, String mode, long maxBytes) {
+        if (mode == null || mode.equalsIgnoreCase("off")) {
+            return null;
+        }
+        ResponseCache current = shared;
+        if (current == null || !current.dir.equals(dir) || current.maxBytes != maxBytes
+                || current.read != (mode.equalsIgnoreCase("read") || mode.equalsIgnoreCase("readwrite"))
+                || current.write != (mode.equalsIgnoreCase("write") || mode.equalsIgnoreCase("readwrite"))) {
+            shared = new ResponseCache(dir, mode, maxBytes);
+        }
+        return shared;
+    }
+
+    public static ResponseCache current() {
+        return shared;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        JsonObject body = ChatRequests.body(request);
+        if (body == null) {
+            return chain.proceed(request);
+        }
+        String key = sampleKey(request, body);
+        // the interceptors behind the cache find the key in the tag of the request
+        PromptTag tag = PromptTag.of(request);
+        request = (tag == null ? new PromptTag(PromptKind.UNKNOWN, null) : tag).withCacheKey(key).attachTo(request);
+        if (read) {
+            String cached = get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return ChatRequests.jsonResponse(request, cached, "hit");
+            }
+        }
+        misses.incrementAndGet();
+        Response response = chain.proceed(request);
+        if (!write || !response.isSuccessful() || response.body() == null) {
+            return response;
+        }
+        String content = response.body().string();
+        put(key, content);
+        return ChatRequests.withBody(response, content);
+    }
+
+    /**
+     * @return the cache key of a chat completion request
+     */
+    public static String key(String url, JsonObject body) {
+        StringBuilder material = new StringBuilder(url).append('\0');
+        for (String field : new String[]{"model", "messages", "temperature", "top_p", "max_tokens"}) {
+            material.append(field).append('=').append(body.has(field) ? body.get(field).toString() : "").append('\0');
+        }
+        return sha256(material.toString());
+    }
+
+    /**
+     * @return the key of this call of the request: the plain key for a deterministic call and for the first call
+     * of a sampled prompt, the plain key numbered by the repeat for every later call of it in this JVM
+     */
+    public static String sampleKey(String url, JsonObject body) {
+        return sampleKey(url, body, nextSample(url, body));
+    }
+
+    /**
+     * @return the key of the request under the number its tag carries, or under the next number when untagged
+     */
+    public static String sampleKey(Request request, JsonObject body) {
+        PromptTag tag = PromptTag.of(request);
+        String url = request.url().toString();
+        return tag == null || tag.getSample() < 0 ? sampleKey(url, body) : sampleKey(url, body, tag.getSample());
+    }
+
+    static String sampleKey(String url, JsonObject body, int sample) {
+        String key = key(url, body);
+        return !sampled(body) || sample == 0 ? key : key + "-" + sample;
+    }
+
+    /**
+     * @return how many calls of the request were numbered before this one in this JVM
+     */
+    public static int nextSample(String url, JsonObject body) {
+        return SAMPLES.computeIfAbsent(key(url, body), k -> new AtomicInteger()).getAndIncrement();
+    }
+
+    /**
+     * @return whether the request samples; without a temperature the server default of 1 applies
+     */
+    static boolean sampled(JsonObject body) {
+        try {
+            return !body.has("temperature") || body.get("temperature").isJsonNull()
+                    || body.get("temperature").getAsDouble() > 0;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the cached response for the key, or null
+     */
+    public String get(String key) {
+        Path file = file(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return content;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store a response under the key and evict old entries when over the size limit
+     */
+    public void put(String key, String content) {
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            long previous = Files.exists(file) ? Files.size(file) : 0;
+            Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (size.get() >= 0) {
+                size.addAndGet(bytes.length - previous);
+            }
+            evict();
+        } catch (IOException ignored) {
+            // the cache is best effort
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key + ".json");
+    }
+
+    private synchronized void evict() throws IOException {
+        if (maxBytes <= 0) {
+            return;
+        }
+        if (size.get() < 0) {
+            size.set(entries().stream().mapToLong(ResponseCache::sizeOf).sum());
+        }
+        if (size.get() <= maxBytes) {
+            return;
+        }
+        List<Path> files = entries();
+        files.sort(Comparator.comparingLong(ResponseCache::lastModified));
+        // evict down to 90% so we do not rescan after every write
+        for (Path file : files) {
+            if (size.get() <= maxBytes * 9 / 10) {
+                break;
+            }
+            long bytes = sizeOf(file);
+            if (Files.deleteIfExists(file)) {
+                size.addAndGet(-bytes);
+            }
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(p -> p.toString().endsWith(".json")).collect(Collectors.toList());
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return String.format("%064x", new BigInteger(1, digest.digest(text.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package zju.cst.aces.http;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends K copies of a repair request at once, spread over temperatures (and over keys by the rate limiter of the
+ * downstream client), and returns the first candidate whose test class parses and has a @Test method. The other
+ * calls are cancelled. Without such a candidate, any answer is returned before an error status. Non-repair calls
+ * pass straight through.
+ * Must be the first interceptor of its client, the candidates go through the downstream client instead.
+ */
+public class SpeculativeRepair implements Interceptor {
+    private static final Pattern JAVA_BLOCK = Pattern.compile("```java[^\\n]*\\n(.*?)```", Pattern.DOTALL);
+    private static final double TEMPERATURE_STEP = 0.3;
+
+    private final OkHttpClient downstream;
+    private final int candidates;
+
+    /**
+     * @param downstream the client the candidate calls go through, without this interceptor
+     * @param candidates how many repair requests to send at once
+     */
+    public SpeculativeRepair(OkHttpClient downstream, int candidates) {
+        this.downstream = downstream;
+        this.candidates = candidates;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        JsonObject body = ChatRequests.body(request);
+        if (body == null || candidates < 2 || ChatRequests.kind(request) != PromptKind.REPAIR) {
+            return chain.proceed(request);
+        }
+
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        AtomicBoolean settled = new AtomicBoolean();
+        List<Call> calls = new ArrayList<>();
+        double temperature = body.has("temperature") ? body.get("temperature").getAsDouble() : 0.5;
+        for (int i = 0; i < candidates; i++) {
+            JsonObject variant = body.deepCopy();
+            variant.addProperty("temperature", Math.min(1.0, temperature + i * TEMPERATURE_STEP));
+            Call call = downstream.newCall(ChatRequests.withBody(request, variant));
+            calls.add(call);
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call c, IOException e) {
+                    results.add(e);
+                }
+
+                @Override
+                public void onResponse(Call c, Response response) {
+                    if (settled.get()) {
+                        response.close();
+                        return;
+                    }
+                    results.add(response);
+                    // the winner may have been picked while this one was added
+                    if (settled.get()) {
+                        drain(results);
+                    }
+                }
+            });
+        }
+
+        // an answer that fails the check still beats an error status, and both are buffered before the rest
+        // of the calls are cancelled
+        Response invalid = null;
+        Response error = null;
+        IOException failure = null;
+        try {
+            for (int received = 0; received < candidates; received++) {
+                Object result = results.take();
+                if (result instanceof IOException) {
+                    failure = (IOException) result;
+                    continue;
+                }
+                Response response = (Response) result;
+                if (!response.isSuccessful()) {
+                    if (error == null) {
+                        error = buffered(response);
+                    } else {
+                        response.close();
+                    }
+                    continue;
+                }
+                String json = response.body().string();
+                if (isValidCandidate(json)) {
+                    return ChatRequests.withBody(response, json);
+                }
+                if (invalid == null) {
+                    invalid = ChatRequests.withBody(response, json);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for repair candidates");
+        } finally {
+            settled.set(true);
+            for (Call call : calls) {
+                call.cancel();
+            }
+            drain(results);
+        }
+        if (invalid != null) {
+            return invalid;
+        }
+        if (error != null) {
+            return error;
+        }
+        throw failure != null ? failure : new IOException("No repair candidate answered");
+    }
+
+    /**
+     * @return the response with its body read into memory, so it outlives the cancelled call
+     */
+    private static Response buffered(Response response) throws IOException {
+        if (response.body() == null) {
+            return response;
+        }
+        try (ResponseBody body = response.body()) {
+            return response.newBuilder().body(ResponseBody.create(body.bytes(), body.contentType())).build();
+        }
+    }
+
+    /**
+     * Close responses that arrive after the winner was picked
+     */
+    private static void drain(BlockingQueue<Object> results) {
+        Object result;
+        while ((result = results.poll()) != null) {
+            if (result instanceof Response) {
+                ((Response) result).close();
+            }
+        }
+    }
+
+    /**
+     * A candidate is valid when its java block parses and declares at least one @Test method
+     */
+    static boolean isValidCandidate(String completionJson) {
+        String content;
+        try {
+            JsonElement json = JsonParser.parseString(completionJson);
+            content = json != null && json.isJsonObject() ? ChatRequests.content(json.getAsJsonObject()) : null;
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (content == null) {
+            return false;
+        }
+        String code = null;
+        Matcher matcher = JAVA_BLOCK.matcher(content);
+        while (matcher.find()) {
+            code = matcher.group(1);
+        }
+        if (code == null) {
+            return false;
+        }
+        ParseResult<CompilationUnit> result = new JavaParser().parse(code);
+        if (!result.isSuccessful() || !result.getResult().isPresent()) {
+            return false;
+        }
+        for (MethodDeclaration method : result.getResult().get().findAll(MethodDeclaration.class)) {
+            if (method.isAnnotationPresent("Test")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,132 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sends generation and repair chat completions with stream=true and reads the server-sent events as they
+ * arrive. The stream is cut as soon as a complete java code block has been received, and the collected text is
+ * handed back to the caller as an ordinary chat.completion response. Other prompts (HITS slices, chain of
+ * thought) answer in JSON or prose that may embed code, so they are not streamed. The output length is left to
+ * the max_tokens of the request.
+ */
+public class StreamingInterceptor implements Interceptor {
+    private static final Pattern JAVA_BLOCK = Pattern.compile("```java[^\\n]*\\n.*?\\n\\s*```", Pattern.DOTALL);
+
+    private final int maxResponseTokens;
+    private final boolean includeUsage;
+
+    /**
+     * @param maxResponseTokens the max_tokens of requests that do not set one
+     * @param includeUsage ask for the usage chunk with stream_options, which not every compatible server accepts
+     */
+    public StreamingInterceptor(int maxResponseTokens, boolean includeUsage) {
+        this.maxResponseTokens = maxResponseTokens;
+        this.includeUsage = includeUsage;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        JsonObject body = ChatRequests.body(request);
+        PromptKind kind = ChatRequests.kind(request);
+        if (body == null || body.has("stream") || (kind != PromptKind.GENERATION && kind != PromptKind.REPAIR)) {
+            return chain.proceed(request);
+        }
+        body.addProperty("stream", true);
+        if (maxResponseTokens > 0 && !body.has("max_tokens") && !body.has("max_completion_tokens")) {
+            body.addProperty("max_tokens", maxResponseTokens);
+        }
+        if (includeUsage && !body.has("stream_options")) {
+            // ask for the usage chunk so token statistics survive streaming
+            JsonObject options = new JsonObject();
+            options.addProperty("include_usage", true);
+            body.add("stream_options", options);
+        }
+        Response response = chain.proceed(ChatRequests.withBody(request, body));
+        String contentType = response.header("Content-Type", "");
+        if (!response.isSuccessful() || response.body() == null || !contentType.contains("text/event-stream")) {
+            return response;
+        }
+
+        StringBuilder content = new StringBuilder();
+        String id = "";
+        String model = body.has("model") ? body.get("model").getAsString() : "";
+        String finishReason = null;
+        // only the usage the server reports, a stream cut before its usage chunk has none
+        JsonObject usage = null;
+        int scanFrom = 0;
+        try (ResponseBody stream = response.body()) {
+            BufferedSource source = stream.source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if (data.equals("[DONE]")) {
+                    break;
+                }
+                JsonObject event;
+                try {
+                    event = JsonParser.parseString(data).getAsJsonObject();
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                if (event.has("id")) {
+                    id = event.get("id").getAsString();
+                }
+                if (event.has("model")) {
+                    model = event.get("model").getAsString();
+                }
+                if (event.has("usage") && event.get("usage").isJsonObject()) {
+                    usage = event.getAsJsonObject("usage");
+                }
+                if (!event.has("choices") || event.getAsJsonArray("choices").size() == 0) {
+                    continue;
+                }
+                JsonObject choice = event.getAsJsonArray("choices").get(0).getAsJsonObject();
+                JsonElement reason = choice.get("finish_reason");
+                if (reason != null && !reason.isJsonNull()) {
+                    finishReason = reason.getAsString();
+                }
+                JsonObject delta = choice.getAsJsonObject("delta");
+                JsonElement text = delta == null ? null : delta.get("content");
+                if (text == null || text.isJsonNull()) {
+                    continue;
+                }
+                content.append(text.getAsString());
+                int end = completeJavaBlockEnd(content, scanFrom);
+                if (end > 0) {
+                    content.setLength(end);
+                    finishReason = "stop";
+                    break;
+                }
+                // a fence can only complete near the end, keep rescans short
+                scanFrom = Math.max(0, content.lastIndexOf("```java"));
+            }
+        }
+        // closing the body above aborts the rest of the stream
+        JsonObject completion = ChatRequests.completion(id, model, content.toString(),
+                finishReason == null ? "stop" : finishReason, usage);
+        return ChatRequests.withBody(response, completion.toString());
+    }
+
+    /**
+     * @return the end of the first complete ```java block at or after from, or -1
+     */
+    static int completeJavaBlockEnd(CharSequence content, int from) {
+        Matcher matcher = JAVA_BLOCK.matcher(content);
+        return matcher.find(from) ? matcher.end() : -1;
+    }
+}
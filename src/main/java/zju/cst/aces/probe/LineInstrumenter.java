@@ -0,0 +1,50 @@
+package zju.cst.aces.probe;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Set;
+
+/**
+ * Inserts a {@link LineProbe#hit} call at every line number entry of the methods with the given name.
+ */
+class LineInstrumenter {
+    private static final String PROBE = LineProbe.class.getName().replace('.', '/');
+
+    /**
+     * @param classBytes the original class file
+     * @param methodName the focal method, every overload is instrumented
+     * @param session the probe session key
+     * @param executable receives the source lines of the focal method
+     * @return the instrumented class file
+     */
+    static byte[] instrument(byte[] classBytes, String methodName, String session, Set<Integer> executable) {
+        ClassReader reader = new ClassReader(classBytes);
+        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                             String[] exceptions) {
+                MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+                if (!name.equals(methodName)) {
+                    return mv;
+                }
+                return new MethodVisitor(Opcodes.ASM9, mv) {
+                    @Override
+                    public void visitLineNumber(int line, Label start) {
+                        super.visitLineNumber(line, start);
+                        executable.add(line);
+                        super.visitLdcInsn(session);
+                        super.visitLdcInsn(line);
+                        super.visitMethodInsn(Opcodes.INVOKESTATIC, PROBE, "hit", "(Ljava/lang/String;I)V", false);
+                    }
+                };
+            }
+        }, 0);
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,35 @@
+package zju.cst.aces.probe;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Receives the line hits of instrumented focal methods. Always loaded by the plugin class loader, so every
+ * {@link ProbeClassLoader} reports into the same registry; each measurement uses its own session key.
+ */
+public class LineProbe {
+    private static final ConcurrentHashMap<String, Set<Integer>> HITS = new ConcurrentHashMap<>();
+
+    /**
+     * Called from instrumented code at the start of every source line of the focal method
+     */
+    public static void hit(String session, int line) {
+        Set<Integer> lines = HITS.get(session);
+        if (lines != null) {
+            lines.add(line);
+        }
+    }
+
+    static void open(String session) {
+        HITS.put(session, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * @return the lines hit in the session, the session is closed
+     */
+    static Set<Integer> close(String session) {
+        Set<Integer> lines = HITS.remove(session);
+        return lines == null ? Collections.<Integer>emptySet() : lines;
+    }
+}
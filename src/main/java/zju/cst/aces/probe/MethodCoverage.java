@@ -0,0 +1,237 @@
+package zju.cst.aces.probe;
+
+import org.apache.maven.plugin.logging.Log;
+import org.junit.platform.engine.DiscoverySelector;
+import org.junit.platform.engine.discovery.DiscoverySelectors;
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Measures the line coverage of one focal method by a set of generated test sources, in process: the tests are
+ * compiled with the system compiler, the focal class is loaded with line probes and the tests run on the JUnit
+ * platform launcher of the plugin.
+ */
+public class MethodCoverage {
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+    private static final String[] TEST_FRAMEWORK_CLASSES = {"org.junit.Test", "org.junit.jupiter.api.Test"};
+
+    private final List<String> classPath;
+    private final Path workDir;
+    private final Log log;
+    private final long timeoutMillis;
+
+    /**
+     * @param classPath the class path of the project, including its own classes
+     * @param workDir where the tests are compiled
+     * @param timeoutMillis how long the tests may run
+     */
+    public MethodCoverage(List<String> classPath, Path workDir, Log log, long timeoutMillis) {
+        this.classPath = classPath;
+        this.workDir = workDir;
+        this.log = log;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return whether this JVM has a Java compiler (it does not when Maven runs on a JRE)
+     */
+    public static boolean available() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    public static class Result {
+        private final Set<Integer> executable;
+        private final Set<Integer> covered;
+        private final int tests;
+
+        Result(Set<Integer> executable, Set<Integer> covered, int tests) {
+            this.executable = executable;
+            this.covered = covered;
+            this.tests = tests;
+        }
+
+        /**
+         * @return the source lines of the focal method
+         */
+        public Set<Integer> getExecutable() {
+            return executable;
+        }
+
+        /**
+         * @return the source lines of the focal method the tests reached
+         */
+        public Set<Integer> getCovered() {
+            return covered;
+        }
+
+        /**
+         * @return how many test classes compiled and ran
+         */
+        public int getTests() {
+            return tests;
+        }
+
+        public double ratio() {
+            return executable.isEmpty() ? 0 : (double) covered.size() / executable.size();
+        }
+    }
+
+    /**
+     * @param focalClass the fully qualified focal class
+     * @param methodName the focal method, all overloads count
+     * @param testSources the generated test files
+     * @return the coverage of the focal method
+     */
+    public Result measure(String focalClass, String methodName, List<Path> testSources) throws IOException {
+        Files.createDirectories(workDir);
+        Path out = Files.createTempDirectory(workDir, "probe-");
+        try {
+            List<String> testClasses = compile(testSources, out);
+            String session = UUID.randomUUID().toString();
+            Set<Integer> executable = ConcurrentHashMap.newKeySet();
+            LineProbe.open(session);
+            Set<Integer> hits;
+            try (ProbeClassLoader loader = new ProbeClassLoader(urls(out), MethodCoverage.class.getClassLoader(),
+                    focalClass, methodName, session, executable)) {
+                // load the focal class first, so its lines are known even when no test reaches it
+                loader.loadClass(focalClass);
+                run(loader, testClasses);
+            } catch (ClassNotFoundException | LinkageError e) {
+                log.warn("Coverage probe failed for " + focalClass + ": " + e);
+            } finally {
+                hits = LineProbe.close(session);
+            }
+            Set<Integer> covered = new TreeSet<>(hits);
+            covered.retainAll(executable);
+            return new Result(new TreeSet<>(executable), covered, testClasses.size());
+        } finally {
+            delete(out);
+        }
+    }
+
+    /**
+     * Compile every source on its own so one broken test does not hide the others
+     * @return the names of the compiled test classes
+     */
+    private List<String> compile(List<Path> sources, Path out) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> classes = new ArrayList<>();
+        if (compiler == null) {
+            return classes;
+        }
+        List<String> options = Arrays.asList("-d", out.toString(), "-cp", compileClassPath(),
+                "-proc:none", "-nowarn", "-encoding", "UTF-8", "-g");
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            for (Path source : sources) {
+                DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+                boolean ok = compiler.getTask(null, files, diagnostics, options, null,
+                        files.getJavaFileObjects(source.toFile())).call();
+                if (ok) {
+                    classes.add(className(source));
+                } else {
+                    log.debug("Skip test that does not compile: " + source + " " + diagnostics.getDiagnostics());
+                }
+            }
+        }
+        return classes;
+    }
+
+    private void run(ProbeClassLoader loader, List<String> testClasses) {
+        List<DiscoverySelector> selectors = new ArrayList<>();
+        for (String name : testClasses) {
+            try {
+                selectors.add(DiscoverySelectors.selectClass(loader.loadClass(name)));
+            } catch (ClassNotFoundException | LinkageError e) {
+                log.debug("Skip test class " + name + ": " + e);
+            }
+        }
+        if (selectors.isEmpty()) {
+            return;
+        }
+        LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request().selectors(selectors).build();
+        Thread runner = new Thread(() -> {
+            Launcher launcher = LauncherFactory.create();
+            launcher.execute(request, new SummaryGeneratingListener());
+        }, "chatunitest-coverage");
+        runner.setContextClassLoader(loader);
+        runner.setDaemon(true);
+        runner.start();
+        try {
+            runner.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (runner.isAlive()) {
+            log.warn("Coverage run timed out after " + timeoutMillis + "ms, using the lines hit so far");
+            runner.interrupt();
+        }
+    }
+
+    private URL[] urls(Path out) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        urls.add(out.toUri().toURL());
+        for (String entry : classPath) {
+            urls.add(Paths.get(entry).toUri().toURL());
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * The project class path plus the JUnit jars of the plugin, which the project may only have in test scope
+     */
+    private String compileClassPath() {
+        List<String> entries = new ArrayList<>(classPath);
+        for (String name : TEST_FRAMEWORK_CLASSES) {
+            try {
+                Class<?> c = Class.forName(name, false, MethodCoverage.class.getClassLoader());
+                entries.add(Paths.get(c.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+            } catch (Exception ignored) {
+                // framework not on the plugin class path
+            }
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    static String className(Path source) throws IOException {
+        String simpleName = source.getFileName().toString().replaceFirst("\\.java$", "");
+        Matcher matcher = PACKAGE.matcher(new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+        return matcher.find() ? matcher.group(1) + "." + simpleName : simpleName;
+    }
+
+    private static void delete(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException ignored) {
+            // leftovers under tmpOutput are harmless
+        }
+    }
+}
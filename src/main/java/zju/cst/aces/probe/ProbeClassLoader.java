@@ -0,0 +1,106 @@
+package zju.cst.aces.probe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Enumeration;
+import java.util.Set;
+
+/**
+ * Child-first loader for the project classes and the generated tests, with the focal class instrumented.
+ * JUnit and the probe come from the plugin realm so the launcher, the engines and the tests agree on them.
+ */
+class ProbeClassLoader extends URLClassLoader {
+    private static final String[] PARENT_FIRST = {
+            "java.", "javax.", "sun.", "jdk.", "org.junit.", "junit.", "org.hamcrest.", "org.opentest4j.",
+            "org.apiguardian.", "zju.cst.aces.probe."
+    };
+
+    private final String focalClass;
+    private final String methodName;
+    private final String session;
+    private final Set<Integer> executable;
+
+    ProbeClassLoader(URL[] urls, ClassLoader parent, String focalClass, String methodName, String session,
+                     Set<Integer> executable) {
+        super(urls, parent);
+        this.focalClass = focalClass;
+        this.methodName = methodName;
+        this.session = session;
+        this.executable = executable;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                if (parentFirst(name)) {
+                    try {
+                        c = getParent().loadClass(name);
+                    } catch (ClassNotFoundException e) {
+                        c = findClass(name);
+                    }
+                } else {
+                    try {
+                        c = name.equals(focalClass) ? defineInstrumented(name) : findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        c = getParent().loadClass(name);
+                    }
+                }
+            }
+            if (resolve) {
+                resolveClass(c);
+            }
+            return c;
+        }
+    }
+
+    private Class<?> defineInstrumented(String name) throws ClassNotFoundException {
+        URL resource = findResource(name.replace('.', '/') + ".class");
+        if (resource == null) {
+            throw new ClassNotFoundException(name);
+        }
+        try (InputStream in = resource.openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            byte[] instrumented = LineInstrumenter.instrument(out.toByteArray(), methodName, session, executable);
+            return defineClass(name, instrumented, 0, instrumented.length);
+        } catch (IOException | RuntimeException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    /**
+     * JUnit engines are registered by the plugin realm only, otherwise a project's own engine jar would be
+     * found twice
+     */
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        if (name.startsWith("META-INF/services/org.junit.")) {
+            return getParent().getResources(name);
+        }
+        return super.getResources(name);
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL url = findResource(name);
+        return url != null ? url : getParent().getResource(name);
+    }
+
+    private static boolean parentFirst(String name) {
+        for (String prefix : PARENT_FIRST) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+<#-- Prefix-stable layout: the class context comes first and is identical for every target of the class,
+     everything that changes per method or per target line comes last. -->
+Greetings! Thank you for assisting me in crafting the unit test. Your expertise is invaluable in generating test cases targeting specific segments of the method-under-test. Let's begin by introducing the focal class and its dependencies. Then, detailed instructions will follow for generating the test case. Finally, the method-to-test and the code to cover are given.
+
+### Focal Class && Dependencies
+
+Here is the source code of the focal class ${class_name}, including member methods and fields.
+
+The complete code provided here is for reference only and is not intended for generating unit tests.
+```java
+${full_fm}
+```
+
+<#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, {}, full_fm)>
+<#list context.c_deps as key, value>
+    Brief information about the dependent class ${key} is as follows:
+    ```
+    ${value}
+    ```
+</#list>
+
+#### Requirements and Attention for the Unit Test to Generate:
+
+- Ensure that the unit tests are executable: they should run without any compilation errors, runtime errors, or timeouts.
+- Aim for comprehensive coverage: the unit tests should encompass a significant portion of the codebase, including instructions and branches within the method under test.
+- Avoid altering the method under test.
+- Generate a complete unit test file, including the package declaration and all imports.
+- Import all dependent libraries used in the unit test file.
+- Name the test class as ${class_name}_Test.
+- Utilize appropriate tools and adhere to the language style guidelines:
+- Utilize JUnit 4 for testing.
+- Adhere to Java 8 language style conventions.
+
+### Output Format:
+
+Here are my requirements for your output format:
+
+<generate>
+    The whole unit test file is:
+    ```java
+    ...
+    ```
+</generate>
+
+You MUST finish all generation in ONE RESPONSE!
+You MUST FULLY write ALL test methods!
+You shouldn't leave any spare work for the human! Finish everything!
+
+### Method-to-test
+
+<#assign method_context = "zju.cst.aces.hits.ContextSelector"?new()({}, m_deps, full_fm, method_name, context.remaining)>
+<#list method_context.m_deps as key, value>
+    Brief information about the dependent method ${key} is as follows:
+    ```
+    ${value}
+    ```
+</#list>
+
+The method-to-test is ${method_sig} in ${class_name}; target it as ${class_name}.${method_name}. Ensure that the unit test methods do test the method under test. The exact line-to-test is marked below:
+```java
+${target_method}
+```
+
+Line-to-test: `${lines_to_test}`
+Only the target lines: ${only_target_lines}
+${constraint_text}
+
+Based on the information provided above, generate unit tests for code ${step_code}. The description of this code is ${step_desp}
+
+Now please generate a whole unit test file for the method-to-test.
@@ -0,0 +1,83 @@
+<#-- Prefix-stable layout: the class context comes first and is identical for every target of the class,
+     everything that changes per method or per target line comes last. -->
+Here is the source code of the focal class ${class_name}:
+
+```java
+${full_fm}
+```
+
+<#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, {}, full_fm)>
+<#list context.c_deps as key, value>
+    Brief information about the dependent class ${key} is as follows:
+    ```
+    ${value}
+    ```
+</#list>
+
+### Instructions on Decomposing the Method under Test into Slices
+
+The slicing objective is to identify all statements in the focal class given before that the stated line-to-test depends on.
+
+1. Summarize the focal method.
+2. List the test environment settings required for running the focal method, including:
+- Enumerate all input parameters and object/class fields invoked in the focal method that need to be set or mocked.
+- Enumerate all object/class methods invoked in the focal method that need to be set or mocked.
+3. Important Note! Please decompose the solution program into multiple problem-solving steps according to the semantics. Each step should represent a slice of the method under test and accomplish a subtask.
+- Slices can be hierarchical.
+- Your analysis has two parts:
+a. Describe the subtask of the slice.
+b. Replicate the corresponding original code statements.
+4. Organize the hierarchical slices into a reformatted structure.
+- For example, if we have 4 slices A, B, C, and D. Slice A contains slice B and slice C, and slice D are siblings of slice A. Reformat them as follows:
+{slice A}.{slice B}: {description of the subtask to accomplish in the reformat} {corresponding original code statements}
+{slice A}.{slice C}: {description of the subtask to accomplish in the reformat} {corresponding original code statements}
+{slice D}: {description of the subtask to accomplish in the reformat} {corresponding original code statements}
+
+### Format of the Output
+
+The output must strictly adhere to the following JSON format:
+
+```json
+{
+"summarization": "...",
+"//": "Local variables defined in the focal method should not be reported.",
+"invoked_outside_vars": [
+"input_str: string, input parameter, the input string to handle",
+"code.format: public string, public class field of object 'code' of class Encoding, representing the format to encode the input string",
+"..."
+],
+"invoked_outside_methods": [
+"parser.norm(string): public member method of object 'parser' of class 'Parser', responsible for normalizing the input string",
+"..."
+],
+"steps": [
+{
+"desp": "Initialization and setup\n    - Initialize an empty list of tokens.\n    - Initialize a boolean flag `eatTheRest` to false.",
+"code": "    ArrayList&lt;String&gt; tokens = new List();\n boolean eatTheRest = false;\n"
+},
+{
+"desp": "...",
+"code": "..."
+},
+...
+]
+}
+```
+
+### Method under Test
+
+<#assign method_context = "zju.cst.aces.hits.ContextSelector"?new()({}, m_deps, full_fm, method_name, context.remaining)>
+<#list method_context.m_deps as key, value>
+    Brief information about the dependent method ${key} is as follows:
+    ```
+    ${value}
+    ```
+</#list>
+
+The exact line-to-test is line number ${offset} in ${method_sig} within the focal class ${class_name}:
+```java
+${target_method}
+```
+
+Line-to-test: `${lines_to_test}`
+${constraint_text}
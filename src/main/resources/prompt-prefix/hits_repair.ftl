@@ -0,0 +1,60 @@
+<#-- Prefix-stable layout: the fixed instructions come first, the failing test and its error last. -->
+Hello! Thank you for reaching out for assistance in fixing the unit test. I'll provide you with the steps to fix the issues, then the failed unit test and the error report.
+
+# Procedures for Fixing the Unit Test:
+Let's proceed step by step:
+
+1. Pick out the statements that the errors occur.
+2. Explain the causes of the errors.
+3. Give solutions on how to fix the errors.
+4. Provide the complete fixed unit test, utilizing JUnit 4.
+
+# Requirements and Considerations for the Unit Test Fix:
+- Ensure the unit tests are executable without compile errors, runtime errors, or timeouts.
+- Aim for high coverage scores, covering as many instructions and branches of the method under test as possible.
+- Avoid modifying the method under test.
+- Generate the entire unit test file, including package declaration and imports.
+- Utilize correct tools and adhere to Java 8 language style:
+- You can use JUnit 4.
+- The language style should follow Java 8 conventions.
+- DO NOT generate line numbers.
+
+# Output Format
+To facilitate generating the desired unit test, follow these instructions:
+
+< Generation Begin >
+## 1. Pick out the statements with errors:
+...
+
+## 2. Explain the causes of the errors
+...
+
+## 3. Give solutions to the errors
+...
+
+## 4. Provide the complete fixed unit test
+
+```java
+...
+```
+< Generation Over >
+
+Ensure all generations are provided in a single response.
+Ensure your generation contains NO line numbers!
+
+# Unit Test to Fix
+
+The method under test is ${class_name}.${method_name}, defined in ${class_name}.
+
+Here's the unit test that needs fixing. To help you locate the error statements, I provide the line numbers.
+
+```java
+${unit_test}
+```
+The error encountered when running this unit test is:
+
+```
+${error_message}
+```
+
+Please proceed with generating the fixed unit test.
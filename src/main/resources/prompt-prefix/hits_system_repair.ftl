@@ -0,0 +1,27 @@
+Hello. You are a talented Java programmer. Here you're going to help the user fix the unit test file with error.
+Here is the information of the focal class `${class_name}`:
+
+```[java]
+${full_fm}
+```
+
+To help you correctly fix the unit test file, we provide the brief information about the dependency:
+<#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, {}, full_fm)>
+<#list context.c_deps as key, value>
+    The brief information of dependent class `${key}` is
+    ```[java]
+    ${value}
+    ```
+</#list>
+
+<#assign method_context = "zju.cst.aces.hits.ContextSelector"?new()({}, m_deps, full_fm, method_name, context.remaining)>
+<#list method_context.m_deps as key, value>
+    The brief information of dependent class `${key}` is
+    ```[java]
+    ${value}
+    ```
+</#list>
+
+The focal method is `${method_sig}` in the focal class `${class_name}`.
+
+You have known enough for understanding and using the method-to-test. Please follow the user's instructions and requirements to fix the unit test provided by the user.
@@ -14,7 +14,8 @@ ${full_fm}
 ```
 
 <#-- List of dependent classes and their brief information -->
-<#list c_deps as key, value>
+<#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, m_deps, full_fm, method_name)>
+<#list context.c_deps as key, value>
     Brief information about the dependent class ${key} is as follows:
     ```
     ${value}
@@ -22,7 +23,7 @@ ${full_fm}
 </#list>
 
 <#-- List of dependent methods and their brief information -->
-<#list m_deps as key, value>
+<#list context.m_deps as key, value>
     Brief information about the dependent method ${key} is as follows:
     ```
     ${value}
@@ -7,14 +7,15 @@ ${full_fm}
 ```
 
 To help you correctly fix the unit test file, we provide the brief information about the dependency:
-<#list c_deps as key, value>
+<#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, m_deps, full_fm, method_name)>
+<#list context.c_deps as key, value>
     The brief information of dependent class `${key}` is
     ```[java]
     ${value}
     ```
 </#list>
 
-<#list m_deps as key, value>
+<#list context.m_deps as key, value>
     The brief information of dependent class `${key}` is
     ```[java]
     ${value}
@@ -3,11 +3,12 @@ The focal method is `${method_sig}` in the focal class `${class_name}`, and thei
 <#if other_method_sigs?has_content>
     Signatures of Other methods in the focal class are `${other_method_sigs}`.
 </#if>
-<#list c_deps?keys as key>
+<#assign context = "zju.cst.aces.hits.ContextSelector"?new()(c_deps, m_deps, full_fm, method_name)>
+<#list context.c_deps?keys as key>
     The brief information of dependent class `${key}` is
-    ```${c_deps[key]}```.
+    ```${context.c_deps[key]}```.
 </#list>
-<#list m_deps?keys as key>
+<#list context.m_deps?keys as key>
     The brief information of dependent class `${key}` is
-    ```${m_deps[key]}```.
+    ```${context.m_deps[key]}```.
 </#list>
@@ -0,0 +1,63 @@
+package zju.cst.aces;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ServeMojoTest {
+    @Test
+    public void methodJob() {
+        ServeMojo.Job job = ServeMojo.Job.parse("{\"id\":\"7\",\"class\":\"a.B\",\"method\":\"parse\",\"line\":12,"
+                + "\"offset\":\"3\",\"ctext\":\"s != null\",\"methodsig\":\"parse(String)\"}", -1);
+        assertEquals("7", job.id);
+        assertEquals("method", job.type);
+        assertEquals("a.B", job.className);
+        assertEquals(12, job.target.getLine());
+        assertEquals("parse", job.target.getMethodName());
+        assertEquals(Integer.valueOf(3), job.target.getOffset());
+        assertEquals("s != null", job.target.getConstraintText());
+        assertEquals("parse(String)", job.target.getMethodSig());
+    }
+
+    @Test
+    public void methodIsTheDefaultTypeAndLineIsOptional() {
+        ServeMojo.Job job = ServeMojo.Job.parse("{\"class\":\"a.B\",\"method\":\"parse\"}", -1);
+        assertEquals("method", job.type);
+        assertNull(job.id);
+        assertEquals(-1, job.target.getLine());
+        assertNull(job.target.getOffset());
+    }
+
+    @Test
+    public void classAndControlJobs() {
+        ServeMojo.Job job = ServeMojo.Job.parse("{\"type\":\"class\",\"class\":\"a.B\"}", -1);
+        assertEquals("a.B", job.className);
+        assertNull(job.target);
+        assertEquals("ping", ServeMojo.Job.parse("{\"type\":\"ping\",\"id\":1}", -1).type);
+        assertEquals("shutdown", ServeMojo.Job.parse("{\"type\":\"shutdown\"}", -1).type);
+    }
+
+    @Test
+    public void invalidJobsAreRejected() {
+        String[] lines = {
+                "",
+                "not json {",
+                "[1, 2]",
+                "\"a.B\"",
+                "{\"type\":\"run\",\"class\":\"a.B\"}",
+                "{\"type\":\"class\"}",
+                "{\"type\":\"class\",\"class\":\" \"}",
+                "{\"class\":\"a.B\"}",
+                "{\"class\":{\"name\":\"a.B\"},\"method\":\"parse\"}",
+                "{\"class\":\"a.B\",\"method\":[\"parse\"]}",
+                "{\"class\":\"a.B\",\"method\":\"parse\",\"line\":\"twelve\"}",
+                "{\"class\":\"a.B\",\"method\":\"parse\",\"offset\":1.5}",
+                "{\"type\":[\"ping\"]}"
+        };
+        for (String line : lines) {
+            assertThrows(IllegalArgumentException.class, () -> ServeMojo.Job.parse(line, -1), line);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package zju.cst.aces.batch;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdaptiveTestsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void onlyNewTestsOfTheFocalMethodAreMatched() throws Exception {
+        Path pkg = Files.createDirectories(dir.resolve("a/b"));
+        Path byName = write(pkg.resolve("Foo_parse_0_Test.java"), "class Foo_parse_0_Test {}");
+        Path byCall = write(pkg.resolve("Foo_3_1_Test.java"), "void t() { new Foo().parse (\"x\"); }");
+        write(pkg.resolve("Foo_4_1_Test.java"), "void t() { new Foo().parseAll(\"x\"); }");
+        write(pkg.resolve("Bar_parse_0_Test.java"), "void t() { new Bar().parse(\"x\"); }");
+        write(pkg.resolve("FooBar_parse_0_Test.java"), "void t() { new FooBar().parse(\"x\"); }");
+        write(Files.createDirectories(dir.resolve("c")).resolve("Foo_parse_0_Test.java"), "");
+        Path old = write(pkg.resolve("Foo_parse_1_Test.java"), "");
+        long since = System.currentTimeMillis() - 1_000;
+        old.toFile().setLastModified(since - 60_000);
+
+        List<Path> tests = AdaptiveTests.testsFor(dir, "a.b.Foo", "parse", since);
+        assertEquals(Arrays.asList(byCall, byName), tests);
+    }
+
+    @Test
+    public void missingPackageHasNoTests() throws Exception {
+        assertEquals(0, AdaptiveTests.testsFor(dir, "x.y.Foo", "parse", 0).size());
+    }
+
+    private static Path write(Path file, String content) throws Exception {
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
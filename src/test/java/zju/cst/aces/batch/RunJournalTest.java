@@ -0,0 +1,76 @@
+package zju.cst.aces.batch;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RunJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void resumeSkipsOnlySuccessfulTasksWithTheSameInputs() {
+        Path file = dir.resolve("journal.jsonl");
+        RunJournal journal = new RunJournal(file, false, new SystemStreamLog());
+        journal.record("method", "a.B#m:3", "h1", RunJournal.SUCCESS, 10);
+        journal.record("method", "a.B#n:7", "h2", RunJournal.FAILED, 10);
+
+        RunJournal resumed = new RunJournal(file, true, new SystemStreamLog());
+        assertTrue(resumed.isDone("method", "a.B#m:3", "h1"));
+        assertFalse(resumed.isDone("method", "a.B#m:3", "changed"));
+        assertFalse(resumed.isDone("class", "a.B#m:3", "h1"));
+        assertFalse(resumed.isDone("method", "a.B#n:7", "h2"));
+    }
+
+    @Test
+    public void laterLinesWin() {
+        Path file = dir.resolve("journal.jsonl");
+        RunJournal journal = new RunJournal(file, false, new SystemStreamLog());
+        journal.record("class", "a.B", "h", RunJournal.SUCCESS, 10);
+        journal.record("class", "a.B", "h", RunJournal.FAILED, 10);
+        journal.record("class", "a.C", "h", RunJournal.FAILED, 10);
+        journal.record("class", "a.C", "h", RunJournal.SUCCESS, 10);
+
+        RunJournal resumed = new RunJournal(file, true, new SystemStreamLog());
+        assertFalse(resumed.isDone("class", "a.B", "h"));
+        assertTrue(resumed.isDone("class", "a.C", "h"));
+    }
+
+    @Test
+    public void malformedAndCutOffLinesAreIgnored() throws Exception {
+        Path file = dir.resolve("journal.jsonl");
+        String lines = "{\"kind\":\"class\",\"id\":\"a.B\",\"inputHash\":\"h\",\"outcome\":\"success\"}\n"
+                + "\n"
+                + "not json\n"
+                + "{\"id\":\"a.C\",\"inputHash\":\"h\",\"outcome\":\"success\"}\n"
+                + "{\"kind\":\"class\",\"id\":\"a.D\",\"inputH";
+        Files.write(file, lines.getBytes(StandardCharsets.UTF_8));
+
+        RunJournal resumed = new RunJournal(file, true, new SystemStreamLog());
+        assertTrue(resumed.isDone("class", "a.B", "h"));
+        assertFalse(resumed.isDone("class", "a.C", "h"));
+        assertFalse(resumed.isDone("class", "a.D", "h"));
+    }
+
+    @Test
+    public void withoutResumeNothingIsDone() {
+        Path file = dir.resolve("journal.jsonl");
+        new RunJournal(file, false, new SystemStreamLog()).record("class", "a.B", "h", RunJournal.SUCCESS, 10);
+        assertFalse(new RunJournal(file, false, new SystemStreamLog()).isDone("class", "a.B", "h"));
+    }
+
+    @Test
+    public void hashSeparatesItsParts() {
+        assertEquals(RunJournal.hash("ab", "c"), RunJournal.hash("ab", "c"));
+        assertNotEquals(RunJournal.hash("ab", "c"), RunJournal.hash("a", "bc"));
+    }
+}
@@ -0,0 +1,46 @@
+package zju.cst.aces.bench;
+
+import org.junit.jupiter.api.Test;
+import zju.cst.aces.http.PromptKind;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class MockLlmServerTest {
+    @Test
+    public void everyBundledTemplateIsSentWithTheKindItsPromptAsksFor() throws Exception {
+        Path resources = Paths.get(MockLlmServerTest.class.getResource("/prompt").toURI()).getParent();
+        List<Path> templates;
+        try (Stream<Path> files = Files.walk(resources)) {
+            templates = files.filter(p -> p.getParent().getFileName().toString().startsWith("prompt"))
+                    .filter(p -> p.toString().endsWith(".ftl"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        assertFalse(templates.isEmpty());
+        for (Path template : templates) {
+            String source = new String(Files.readAllBytes(template), StandardCharsets.UTF_8);
+            String name = resources.relativize(template).toString();
+            PromptKind kind = PromptKind.forTemplate(name, source);
+            if (kind != null) {
+                assertEquals(MockLlmServer.askedFor(source), MockLlmServer.phaseOf(kind), name);
+            }
+        }
+    }
+
+    @Test
+    public void askedFor() {
+        assertEquals(MockLlmServer.Phase.SLICE, MockLlmServer.askedFor("Answer in the following JSON format:"));
+        assertEquals(MockLlmServer.Phase.REPAIR, MockLlmServer.askedFor("Please fix the error."));
+        assertEquals(MockLlmServer.Phase.REPAIR, MockLlmServer.askedFor("Repair the buggy line."));
+        assertEquals(MockLlmServer.Phase.GEN, MockLlmServer.askedFor("Generate a unit test with a prefix."));
+    }
+}
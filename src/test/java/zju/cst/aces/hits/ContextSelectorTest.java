@@ -0,0 +1,85 @@
+package zju.cst.aces.hits;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import zju.cst.aces.batch.TokenCounter;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContextSelectorTest {
+    private static final String MODEL = "gpt-3.5-turbo";
+    private static final String TEMPLATE = "<#assign context = \"zju.cst.aces.hits.ContextSelector\"?new()(c_deps, {}, full_fm)>"
+            + "<#list context.c_deps as key, value>${value}</#list>"
+            + "<#assign method_context = \"zju.cst.aces.hits.ContextSelector\"?new()"
+            + "({}, m_deps, full_fm, method_name, context.remaining)>"
+            + "<#list method_context.m_deps as key, value>${value}</#list>";
+
+    @AfterEach
+    public void clearBudget() {
+        ContextSelector.configure(0, null);
+    }
+
+    @Test
+    public void theClassAndMethodPartsShareOneBudget() throws Exception {
+        String classText = "class Focal { Helper helper; int run() { return Util.twice(helper.value()); } }";
+        String dep = repeat("int field;", 100);
+        TokenCounter counter = TokenCounter.forModel(MODEL);
+        int depTokens = counter.count(dep);
+        // room for three of the four dependencies
+        int budget = ContextSelector.INSTRUCTION_RESERVE + counter.count(classText) + 3 * depTokens;
+        ContextSelector.configure(budget, MODEL);
+
+        Map<String, String> classDeps = new LinkedHashMap<>();
+        classDeps.put("Helper", dep.replace("field", "a"));
+        classDeps.put("Other", dep.replace("field", "b"));
+        Map<String, String> methodDeps = new LinkedHashMap<>();
+        methodDeps.put("Util", dep.replace("field", "c"));
+        methodDeps.put("Extra", dep.replace("field", "d"));
+        String prompt = render(classDeps, methodDeps, classText);
+
+        assertTrue(counter.count(prompt) <= 3 * depTokens + 3, "both parts together stay within the budget");
+        assertTrue(prompt.contains("int a;"));
+        assertTrue(prompt.contains("int b;"));
+        assertTrue(prompt.contains("int c;"));
+    }
+
+    @Test
+    public void withoutABudgetEverythingIsKept() throws Exception {
+        Map<String, String> classDeps = new LinkedHashMap<>();
+        classDeps.put("Helper", "a");
+        Map<String, String> methodDeps = new LinkedHashMap<>();
+        methodDeps.put("Util", "b");
+        assertEquals("ab", render(classDeps, methodDeps, "class Focal {}"));
+    }
+
+    private static String render(Map<String, String> classDeps, Map<String, String> methodDeps, String classText)
+            throws Exception {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_30);
+        Template template = new Template("split", new StringReader(TEMPLATE), configuration);
+        Map<String, Object> values = new HashMap<>();
+        values.put("c_deps", classDeps);
+        values.put("m_deps", methodDeps);
+        values.put("full_fm", classText);
+        values.put("method_name", "run");
+        StringWriter out = new StringWriter();
+        template.process(values, out);
+        return out.toString();
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package zju.cst.aces.hits;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class SliceCacheTest {
+    private static final String METHOD = "int parse(String s) {\n    if (s == null) {\n        return 3;\n    }\n"
+            + "    return s.length();\n}";
+
+    @Test
+    public void linesOfOneMethodShareASlice() throws Exception {
+        String third = key("a.Slices", "parse", 3, "int LIMIT = 5;");
+        String fifth = key("a.Slices", "parse", 5, "int LIMIT = 5;");
+        assertEquals(third, fifth);
+    }
+
+    @Test
+    public void numbersInTheContextStayInTheKey() throws Exception {
+        // the offset 3 and 5 match the literal in the dependency of each prompt
+        String third = key("a.Slices", "parse", 3, "int LIMIT = 3;");
+        String fifth = key("a.Slices", "parse", 5, "int LIMIT = 5;");
+        assertNotEquals(third, fifth);
+    }
+
+    @Test
+    public void otherModelsAndClassesGetTheirOwnSlice() throws Exception {
+        String key = key("a.Slices", "parse", 3, "");
+        assertNotEquals(key, key("a.Other", "parse", 3, ""));
+        JsonObject body = new JsonObject();
+        body.addProperty("model", "other");
+        try (TargetValues.Binding binding = TargetValues.bind("a.Slices", "parse", "a.Slices#parse:3",
+                values(3))) {
+            assertNotEquals(key, SliceCache.key(body, prompt("a.Slices", 3, ""), binding));
+        }
+    }
+
+    @Test
+    public void noKeyWithoutTheFocalMethod() throws Exception {
+        try (TargetValues.Binding binding = TargetValues.bind("a.Slices", "none", "a.Slices#none:1",
+                new HashMap<>())) {
+            assertNull(SliceCache.key(new JsonObject(), "prompt", binding));
+        }
+    }
+
+    private static String key(String className, String method, int offset, String dependency) throws Exception {
+        JsonObject body = new JsonObject();
+        body.addProperty("model", "m");
+        try (TargetValues.Binding binding = TargetValues.bind(className, method, className + "#" + method + ":" + offset,
+                values(offset))) {
+            return SliceCache.key(body, prompt(className, offset, dependency), binding);
+        }
+    }
+
+    /**
+     * The per-target values of the line at the given offset, as HitsPrompts binds them
+     */
+    private static Map<String, String> values(int offset) {
+        Map<String, String> values = new HashMap<>();
+        values.put("focal_method", METHOD);
+        values.put("full_fm", "class Slices {\n" + annotated(offset) + "\n}");
+        values.put("target_method", annotated(offset));
+        values.put("lines_to_test", METHOD.split("\n")[offset - 1].trim());
+        values.put("constraint_text", "Reach line " + offset + ".");
+        values.put("offset", String.valueOf(offset));
+        return values;
+    }
+
+    private static String annotated(int offset) {
+        String[] lines = METHOD.split("\n");
+        lines[offset - 1] += " // line-to-test";
+        return String.join("\n", lines);
+    }
+
+    /**
+     * The slice prompt as hits_gen_slice.ftl renders it
+     */
+    private static String prompt(String className, int offset, String dependency) {
+        Map<String, String> values = values(offset);
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        return "Here is the source code of the focal class " + simpleName + ":\n" + values.get("full_fm") + "\n"
+                + "Brief information about the dependent class Limits is as follows:\n" + dependency + "\n"
+                + "The exact line-to-test is line number " + offset + " in int parse(String) within the focal class "
+                + simpleName + ":\n" + values.get("target_method") + "\n"
+                + "Line-to-test: `" + values.get("lines_to_test") + "`\n"
+                + values.get("constraint_text") + "\n";
+    }
+}
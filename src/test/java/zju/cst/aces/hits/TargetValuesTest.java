@@ -0,0 +1,97 @@
+package zju.cst.aces.hits;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TargetValuesTest {
+    @Test
+    public void templatesSeeOnlyTheBindingOfTheirMethod() throws Exception {
+        try (TargetValues.Binding parse = TargetValues.bind("a.Values", "parse", "a.Values#parse:3",
+                Collections.singletonMap("lines_to_test", "x = 3;"));
+             TargetValues.Binding format = TargetValues.bind("a.Values", "format", "a.Values#format:9",
+                     Collections.singletonMap("lines_to_test", "y = 9;"))) {
+            assertEquals("x = 3;", exec("Values", "parse").get("lines_to_test"));
+            assertEquals("a.Values#parse:3", exec("Values", "parse").get(TargetValues.TARGET_ID));
+            assertEquals("y = 9;", exec("Values", "format").get("lines_to_test"));
+            assertTrue(exec("Values", "print").isEmpty());
+            assertTrue(exec("Other", "parse").isEmpty());
+            assertSame(parse, TargetValues.byId("a.Values#parse:3"));
+            assertSame(format, TargetValues.byId("a.Values#format:9"));
+        }
+        assertTrue(exec("Values", "parse").isEmpty());
+        assertNull(TargetValues.byId("a.Values#parse:3"));
+    }
+
+    @Test
+    public void aClassBindingServesMethodsWithoutTheirOwn() throws Exception {
+        try (TargetValues.Binding ignored = TargetValues.bind("a.Whole", null, "a.Whole",
+                Collections.singletonMap("full_fm", "class"));
+             TargetValues.Binding method = TargetValues.bind("a.Whole", "run", "a.Whole#run:1",
+                     Collections.singletonMap("full_fm", "method"))) {
+            assertEquals("class", exec("Whole", "stop").get("full_fm"));
+            assertEquals("class", exec("Whole", "").get("full_fm"));
+            assertEquals("method", exec("Whole", "run").get("full_fm"));
+            assertSame(method, TargetValues.lookup("a.Whole", "run"));
+        }
+    }
+
+    @Test
+    public void aSecondTargetOfTheMethodWaitsForTheFirst() throws Exception {
+        TargetValues.Binding first = TargetValues.bind("a.Wait", "m", "a.Wait#m:1",
+                Collections.singletonMap("offset", "1"));
+        CountDownLatch bound = new CountDownLatch(1);
+        AtomicReference<Map<?, ?>> seen = new AtomicReference<>();
+        Thread second = new Thread(() -> {
+            try (TargetValues.Binding ignored = TargetValues.bind("a.Wait", "m", "a.Wait#m:2",
+                    Collections.singletonMap("offset", "2"))) {
+                seen.set(exec("Wait", "m"));
+                bound.countDown();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        second.start();
+        try {
+            assertFalse(bound.await(200, TimeUnit.MILLISECONDS));
+            assertEquals("1", exec("Wait", "m").get("offset"));
+        } finally {
+            first.close();
+        }
+        assertTrue(bound.await(5, TimeUnit.SECONDS));
+        second.join(5_000);
+        assertEquals("2", seen.get().get("offset"));
+        assertTrue(exec("Wait", "m").isEmpty());
+    }
+
+    @Test
+    public void aClosedBindingFreesItsKey() {
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int run = 1; run <= 2; run++) {
+                try (TargetValues.Binding ignored = TargetValues.bind("a.Again", "m", "a.Again#m:" + run,
+                        Collections.singletonMap("offset", String.valueOf(run)))) {
+                    assertEquals(String.valueOf(run), exec("Again", "m").get("offset"));
+                }
+            }
+            TargetValues.bind("a.Again", null, "a.Again", Collections.emptyMap()).close();
+            TargetValues.bind("a.Again", null, "a.Again", Collections.emptyMap()).close();
+        });
+    }
+
+    private static Map<?, ?> exec(String className, String methodName) throws Exception {
+        return (Map<?, ?>) new TargetValues().exec(Arrays.asList(className, methodName));
+    }
+}
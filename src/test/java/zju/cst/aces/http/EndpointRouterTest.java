@@ -0,0 +1,95 @@
+package zju.cst.aces.http;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EndpointRouterTest {
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    @Test
+    public void aRetryGoesBackToTheFailedEndpointWhenTheOtherIsFull() throws Exception {
+        EndpointRouter router = EndpointRouter.shared(new String[]{"http://busy.test/v1/|10|1", "http://flaky.test/v1/"});
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean failedOnce = new AtomicBoolean();
+        List<String> hosts = new CopyOnWriteArrayList<>();
+        Thread holder = new Thread(() -> {
+            try {
+                router.intercept(chain(request -> {
+                    busy.countDown();
+                    release.await();
+                    return ok(request);
+                }));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        holder.start();
+        try {
+            assertTrue(busy.await(5, TimeUnit.SECONDS));
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                Response response = router.intercept(chain(request -> {
+                    hosts.add(request.url().host());
+                    if (failedOnce.compareAndSet(false, true)) {
+                        throw new IOException("connection reset");
+                    }
+                    return ok(request);
+                }));
+                assertEquals(200, response.code());
+            });
+            assertEquals(2, hosts.size());
+            assertEquals("flaky.test", hosts.get(0));
+            assertEquals("flaky.test", hosts.get(1));
+        } finally {
+            release.countDown();
+            holder.join(5_000);
+        }
+    }
+
+    private interface Backend {
+        Response answer(Request request) throws Exception;
+    }
+
+    private static Response ok(Request request) {
+        return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(200).message("OK")
+                .body(ResponseBody.create("{}", JSON)).build();
+    }
+
+    private static Interceptor.Chain chain(Backend backend) {
+        Request request = new Request.Builder().url("http://localhost/v1/chat/completions")
+                .post(RequestBody.create("{\"model\":\"m\",\"messages\":[]}", JSON)).build();
+        Call call = (Call) Proxy.newProxyInstance(EndpointRouterTest.class.getClassLoader(), new Class<?>[]{Call.class},
+                (proxy, method, args) -> "isCanceled".equals(method.getName()) ? false : null);
+        return (Interceptor.Chain) Proxy.newProxyInstance(EndpointRouterTest.class.getClassLoader(),
+                new Class<?>[]{Interceptor.Chain.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "request":
+                            return request;
+                        case "call":
+                            return call;
+                        default:
+                            return backend.answer((Request) args[0]);
+                    }
+                });
+    }
+}
@@ -0,0 +1,34 @@
+package zju.cst.aces.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PromptKindTest {
+    @Test
+    public void fileNameDecidesWithoutADeclaration() {
+        assertEquals(PromptKind.GENERATION, PromptKind.forTemplate("prompt/initial.ftl", "Test it."));
+        assertEquals(PromptKind.REPAIR, PromptKind.forTemplate("prompt/testspark_repair.ftl", "Fix it."));
+        assertEquals(PromptKind.SLICE, PromptKind.forTemplate("prompt\\hits_gen_slice.ftl", "Slice it."));
+        assertNull(PromptKind.forTemplate("hits_system_repair.ftl", "You fix tests."));
+        assertNull(PromptKind.forTemplate("config.properties", ""));
+    }
+
+    @Test
+    public void aDeclarationWins() {
+        assertEquals(PromptKind.REASONING,
+                PromptKind.forTemplate("initial.ftl", "<#-- chatunitest-prompt: reasoning -->\nThink first."));
+        assertEquals(PromptKind.GENERATION,
+                PromptKind.forTemplate("repair.ftl", "<#--chatunitest-prompt:generation-->"));
+        assertEquals(PromptKind.REPAIR,
+                PromptKind.forTemplate("repair.ftl", "<#-- chatunitest-prompt: nonsense -->"));
+    }
+
+    @Test
+    public void parse() {
+        assertEquals(PromptKind.SLICE, PromptKind.parse(" slice "));
+        assertEquals(PromptKind.UNKNOWN, PromptKind.parse("nonsense"));
+        assertEquals(PromptKind.UNKNOWN, PromptKind.parse(null));
+    }
+}
@@ -0,0 +1,83 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PromptMarkersTest {
+    @Test
+    public void markPutsTheMarkerFirst() {
+        assertEquals("[[chatunitest-prompt:REPAIR]]\nFix it.", PromptMarkers.mark("Fix it.", PromptKind.REPAIR, null));
+        assertEquals("[[chatunitest-prompt:SLICE target=${id}]]\nSlice it.",
+                PromptMarkers.mark("Slice it.", PromptKind.SLICE, "${id}"));
+        assertSame("System.", PromptMarkers.mark("System.", null, null));
+    }
+
+    @Test
+    public void markKeepsTheFtlHeaderFirst() {
+        assertEquals("<#ftl encoding=\"UTF-8\">[[chatunitest-prompt:GENERATION]]\nTest it.",
+                PromptMarkers.mark("<#ftl encoding=\"UTF-8\">Test it.", PromptKind.GENERATION, null));
+    }
+
+    @Test
+    public void stripTakesTheMarkersOutOfEveryMessage() {
+        JsonObject body = JsonParser.parseString("{\"messages\":["
+                + "{\"role\":\"system\",\"content\":\"You test Java.\"},"
+                + "{\"role\":\"user\",\"content\":\"[[chatunitest-prompt:GENERATION]]\\nFirst.\"},"
+                + "{\"role\":\"assistant\",\"content\":null},"
+                + "{\"role\":\"user\",\"content\":\"[[chatunitest-prompt:SLICE target=a.B#m:3]]\\r\\nSecond.\"}"
+                + "]}").getAsJsonObject();
+        assertArrayEquals(new String[]{"SLICE", "a.B#m:3"}, PromptMarkers.strip(body));
+        assertEquals("You test Java.", content(body, 0));
+        assertEquals("First.", content(body, 1));
+        assertEquals("Second.", content(body, 3));
+    }
+
+    @Test
+    public void unmarkedRequestsHaveNoKind() {
+        JsonObject body = JsonParser.parseString("{\"messages\":[{\"role\":\"user\",\"content\":\"Test it.\"}]}")
+                .getAsJsonObject();
+        assertNull(PromptMarkers.strip(body));
+        assertEquals("Test it.", content(body, 0));
+        assertNull(PromptMarkers.strip(new JsonObject()));
+    }
+
+    @Test
+    public void theKindAndTargetTravelAsATagNotAsHeaders() throws Exception {
+        String json = "{\"messages\":[{\"role\":\"user\","
+                + "\"content\":\"[[chatunitest-prompt:SLICE target=a.Größe#maß:3]]\\nSlice it.\"}]}";
+        Request request = new Request.Builder().url("http://localhost/v1/chat/completions")
+                .post(RequestBody.create(json, MediaType.get("application/json"))).build();
+        AtomicReference<Request> sent = new AtomicReference<>();
+        Interceptor.Chain chain = (Interceptor.Chain) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Interceptor.Chain.class}, (proxy, method, args) -> {
+                    if ("request".equals(method.getName())) {
+                        return request;
+                    }
+                    sent.set((Request) args[0]);
+                    return null;
+                });
+        new PromptMarkers().intercept(chain);
+
+        assertEquals(0, sent.get().headers().size());
+        assertEquals(PromptKind.SLICE, ChatRequests.kind(sent.get()));
+        assertEquals("a.Größe#maß:3", PromptTag.of(sent.get()).getTarget());
+        assertEquals("Slice it.", content(ChatRequests.body(sent.get()), 0));
+    }
+
+    private static String content(JsonObject body, int message) {
+        return body.getAsJsonArray("messages").get(message).getAsJsonObject().get("content").getAsString();
+    }
+}
@@ -0,0 +1,73 @@
+package zju.cst.aces.http;
+
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RateLimiterTest {
+    private static final Request REQUEST = new Request.Builder().url("http://localhost/v1/chat/completions").build();
+
+    @Test
+    public void equalKeysTakeTurns() throws Exception {
+        RateLimiter limiter = RateLimiter.shared(new String[]{"a", "b", "c"}, 600, 0, 0, "gpt-4o-mini");
+        List<String> used = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            limiter.intercept(chain(used, key -> 200));
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "a", "b", "c"), used);
+    }
+
+    @Test
+    public void aRejectedCallIsRetriedOnTheNextKey() throws Exception {
+        RateLimiter limiter = RateLimiter.shared(new String[]{"x", "y"}, 600, 0, 1, "gpt-4o-mini");
+        List<String> used = new ArrayList<>();
+        Response response = limiter.intercept(chain(used, key -> "x".equals(key) ? 429 : 200));
+        assertEquals(200, response.code());
+        assertEquals(Arrays.asList("x", "y"), used);
+        // x cools down for the Retry-After of its 429
+        limiter.intercept(chain(used, key -> 200));
+        assertEquals(Arrays.asList("x", "y", "y"), used);
+    }
+
+    @Test
+    public void withoutABudgetTheKeyOfTheCoreIsKept() throws Exception {
+        RateLimiter limiter = RateLimiter.shared(new String[]{"a", "b"}, 0, 0, 0, "gpt-4o-mini");
+        List<String> used = new ArrayList<>();
+        limiter.intercept(chain(used, key -> 200));
+        assertEquals(Arrays.asList((String) null), used);
+    }
+
+    /**
+     * A chain that records the key of every call and answers with the status code the key gets
+     */
+    private static Interceptor.Chain chain(List<String> used, Function<String, Integer> codes) {
+        return (Interceptor.Chain) Proxy.newProxyInstance(RateLimiterTest.class.getClassLoader(),
+                new Class<?>[]{Interceptor.Chain.class}, (proxy, method, args) -> {
+                    if ("request".equals(method.getName())) {
+                        return REQUEST;
+                    }
+                    if ("proceed".equals(method.getName())) {
+                        Request request = (Request) args[0];
+                        String authorization = request.header("Authorization");
+                        String key = authorization == null ? null : authorization.substring("Bearer ".length());
+                        used.add(key);
+                        int code = codes.apply(key);
+                        return new Response.Builder().request(request).protocol(Protocol.HTTP_1_1).code(code)
+                                .message(code == 200 ? "OK" : "Too Many Requests").header("Retry-After", "30")
+                                .body(ResponseBody.create("{}", null)).build();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
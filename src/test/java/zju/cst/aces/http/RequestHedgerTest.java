@@ -0,0 +1,105 @@
+package zju.cst.aces.http;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestHedgerTest {
+    private HttpServer server;
+    private final AtomicLong slowNext = new AtomicLong();
+    private final AtomicInteger served = new AtomicInteger();
+
+    @BeforeEach
+    public void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            served.incrementAndGet();
+            sleep(slowNext.getAndSet(0));
+            byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    public void aSlowRequestIsHedgedButAWaitBeforeTheWireIsNot() throws Exception {
+        OkHttpClient downstream = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    // stands in for a rate limit wait in front of the wire
+                    if ("wait".equals(chain.request().header("X-Test"))) {
+                        sleep(1000);
+                    }
+                    return chain.proceed(chain.request());
+                })
+                .addNetworkInterceptor(RequestHedger.timer())
+                .build();
+        OkHttpClient.Builder builder = downstream.newBuilder();
+        builder.interceptors().add(0, new RequestHedger(downstream, 95, 0.5));
+        OkHttpClient client = builder.build();
+        for (int i = 0; i < 20; i++) {
+            try (Response response = client.newCall(request(null)).execute()) {
+                assertEquals(200, response.code());
+            }
+        }
+        assertTrue(RequestHedger.threshold(95) < 500);
+
+        int before = served.get();
+        try (Response response = client.newCall(request("wait")).execute()) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(before + 1, served.get(), "waiting before the wire sends no copy");
+
+        slowNext.set(5000);
+        long start = System.currentTimeMillis();
+        try (Response response = client.newCall(request(null)).execute()) {
+            assertEquals(200, response.code());
+        }
+        assertTrue(System.currentTimeMillis() - start < 4000, "the copy answers before the slow first request");
+        assertEquals(before + 3, served.get());
+        assertTrue(RequestHedger.summary().endsWith("first 1 times"));
+    }
+
+    private Request request(String test) {
+        Request.Builder builder = new Request.Builder()
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions")
+                .post(RequestBody.create("{\"model\":\"m\",\"messages\":[]}", ChatRequests.JSON));
+        if (test != null) {
+            builder.header("X-Test", test);
+        }
+        return builder.build();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResponseCacheTest {
+    private static final String URL = "https://api.example.com/v1/chat/completions";
+
+    @Test
+    public void keyCoversWhatChangesTheAnswer() {
+        String key = ResponseCache.key(URL, body("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"a\"}],"
+                + "\"temperature\":0}"));
+        assertEquals(key, ResponseCache.key(URL, body("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"a\"}],"
+                + "\"temperature\":0,\"stream\":true}")));
+        assertNotEquals(key, ResponseCache.key(URL, body("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"b\"}],"
+                + "\"temperature\":0}")));
+        assertNotEquals(key, ResponseCache.key(URL, body("{\"model\":\"n\",\"messages\":[{\"role\":\"user\",\"content\":\"a\"}],"
+                + "\"temperature\":0}")));
+        assertNotEquals(key, ResponseCache.key(URL, body("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"a\"}],"
+                + "\"temperature\":0,\"max_tokens\":100}")));
+        assertNotEquals(key, ResponseCache.key("http://localhost/v1/chat/completions",
+                body("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"a\"}],\"temperature\":0}")));
+    }
+
+    @Test
+    public void deterministicRepeatsShareOneKey() {
+        JsonObject request = body("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"deterministic\"}],"
+                + "\"temperature\":0}");
+        String key = ResponseCache.key(URL, request);
+        assertEquals(key, ResponseCache.sampleKey(URL, request));
+        assertEquals(key, ResponseCache.sampleKey(URL, request));
+    }
+
+    @Test
+    public void sampledRepeatsGetTheirOwnKeys() {
+        JsonObject request = body("{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"sampled\"}],"
+                + "\"temperature\":0.7}");
+        String key = ResponseCache.key(URL, request);
+        assertEquals(key, ResponseCache.sampleKey(URL, request));
+        assertEquals(key + "-1", ResponseCache.sampleKey(URL, request));
+        assertEquals(key + "-2", ResponseCache.sampleKey(URL, request));
+    }
+
+    @Test
+    public void copiesOfOneCallKeepItsNumber() {
+        String json = "{\"model\":\"m\",\"messages\":[{\"role\":\"user\",\"content\":\"copied\"}],\"temperature\":0.7}";
+        JsonObject body = body(json);
+        Request request = new Request.Builder().url(URL).post(RequestBody.create(json, ChatRequests.JSON)).build();
+        assertEquals(0, ResponseCache.nextSample(URL, body));
+        assertEquals(1, ResponseCache.nextSample(URL, body));
+        // a hedged copy or a retry of the second call
+        Request second = new PromptTag(PromptKind.GENERATION, null).withSample(1).attachTo(request);
+        String key = ResponseCache.key(URL, body);
+        assertEquals(key + "-1", ResponseCache.sampleKey(second, body));
+        assertEquals(key + "-1", ResponseCache.sampleKey(second, body));
+        assertEquals(key + "-2", ResponseCache.sampleKey(request, body));
+    }
+
+    @Test
+    public void missingTemperatureSamples() {
+        assertTrue(ResponseCache.sampled(body("{\"model\":\"m\"}")));
+        assertTrue(ResponseCache.sampled(body("{\"temperature\":null}")));
+        assertTrue(ResponseCache.sampled(body("{\"temperature\":1}")));
+        assertFalse(ResponseCache.sampled(body("{\"temperature\":0}")));
+    }
+
+    private static JsonObject body(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+}
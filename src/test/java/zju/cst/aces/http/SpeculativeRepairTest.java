@@ -0,0 +1,100 @@
+package zju.cst.aces.http;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpeculativeRepairTest {
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final String VALID = "```java\nclass A_Test {\n    @Test\n    public void t() {\n    }\n}\n```";
+    private static final String INVALID = "I cannot fix this test.";
+
+    @Test
+    public void aValidCandidateWins() throws Exception {
+        Response response = repair(new String[]{INVALID, VALID}, new int[]{0, 300});
+        assertEquals(200, response.code());
+        assertEquals(VALID, ChatRequests.content(JsonParser.parseString(response.body().string()).getAsJsonObject()));
+    }
+
+    @Test
+    public void anAnswerBeatsAnErrorThatCameFirst() throws Exception {
+        Response response = repair(new String[]{null, INVALID}, new int[]{0, 300});
+        assertEquals(200, response.code());
+        assertEquals(INVALID, ChatRequests.content(JsonParser.parseString(response.body().string()).getAsJsonObject()));
+    }
+
+    @Test
+    public void theErrorBodyIsReadableAfterTheCallsAreCancelled() throws Exception {
+        Response response = repair(new String[]{null, null}, new int[]{0, 300});
+        assertEquals(500, response.code());
+        assertEquals("{\"error\":{\"message\":\"down\"}}", response.body().string());
+    }
+
+    @Test
+    public void otherCallsPassThrough() throws Exception {
+        Request request = request(PromptKind.GENERATION);
+        Response passed = new SpeculativeRepair(new OkHttpClient(), 2).intercept(chain(request));
+        assertFalse(passed.isSuccessful());
+        assertEquals(418, passed.code());
+    }
+
+    /**
+     * Run a repair request with one candidate per answer; a null answer is a 500, each candidate after its delay
+     */
+    private static Response repair(String[] answers, int[] delays) throws Exception {
+        OkHttpClient downstream = new OkHttpClient.Builder().addInterceptor(chain -> {
+            JsonObject body = ChatRequests.body(chain.request());
+            int candidate = (int) Math.round((body.get("temperature").getAsDouble() - 0.2) / 0.3);
+            try {
+                TimeUnit.MILLISECONDS.sleep(delays[candidate]);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Response.Builder response = new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1);
+            if (answers[candidate] == null) {
+                return response.code(500).message("Internal Server Error")
+                        .body(ResponseBody.create("{\"error\":{\"message\":\"down\"}}", JSON)).build();
+            }
+            String completion = ChatRequests.completion("c" + candidate, "m", answers[candidate], "stop", null).toString();
+            return response.code(200).message("OK").body(ResponseBody.create(completion, JSON)).build();
+        }).build();
+        Response response = new SpeculativeRepair(downstream, answers.length).intercept(chain(request(PromptKind.REPAIR)));
+        assertTrue(downstream.dispatcher().runningCallsCount() <= answers.length);
+        return response;
+    }
+
+    private static Request request(PromptKind kind) {
+        String json = "{\"model\":\"m\",\"temperature\":0.2,\"messages\":[{\"role\":\"user\",\"content\":\"Fix it.\"}]}";
+        return new PromptTag(kind, null).attachTo(new Request.Builder().url("http://localhost/v1/chat/completions")
+                .post(RequestBody.create(json, JSON)).build());
+    }
+
+    /**
+     * A chain that answers 418 to whatever reaches it
+     */
+    private static Interceptor.Chain chain(Request request) {
+        return (Interceptor.Chain) Proxy.newProxyInstance(SpeculativeRepairTest.class.getClassLoader(),
+                new Class<?>[]{Interceptor.Chain.class}, (proxy, method, args) -> {
+                    if ("request".equals(method.getName())) {
+                        return request;
+                    }
+                    return new Response.Builder().request((Request) args[0]).protocol(Protocol.HTTP_1_1)
+                            .code(418).message("Teapot").body(ResponseBody.create("", JSON)).build();
+                });
+    }
+}